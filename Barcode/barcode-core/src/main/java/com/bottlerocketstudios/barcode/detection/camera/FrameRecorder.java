@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.camera;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends preview frames to a file in the format read by {@link FrameRecording}. Frames are copied
+ * into a memory mapped region of the file, so recording costs one copy per frame on the camera thread
+ * and leaves the writing to the kernel. An existing recording is appended to.
+ */
+public final class FrameRecorder implements Closeable {
+
+    private static final long MAP_SIZE = 32L * 1024 * 1024;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+    private long mPosition;
+
+    public FrameRecorder(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "rw");
+        mChannel = mFile.getChannel();
+        try {
+            if (mFile.length() == 0) {
+                mFile.writeInt(FrameRecording.MAGIC);
+                mFile.writeInt(FrameRecording.VERSION);
+                mPosition = FrameRecording.FILE_HEADER_SIZE;
+            } else {
+                mPosition = FrameRecording.scan(mFile, null);
+            }
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param data           The frame exactly as delivered by the camera.
+     * @param timestampNanos When the frame was delivered, from {@link System#nanoTime()}.
+     */
+    public synchronized void record(byte[] data, int width, int height, long timestampNanos) throws IOException {
+        int recordSize = FrameRecording.RECORD_HEADER_SIZE + data.length;
+        if (mBuffer == null || mBuffer.remaining() < recordSize) {
+            // Mapping past the end grows the file, the unused tail is truncated on close.
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, mPosition, Math.max(MAP_SIZE, recordSize));
+        }
+        // The header goes in after the data and the width last, so that if the app dies part way
+        // through the record still reads as unwritten.
+        int start = mBuffer.position();
+        mBuffer.position(start + FrameRecording.RECORD_HEADER_SIZE);
+        mBuffer.put(data);
+        mBuffer.putInt(start + 4, height);
+        mBuffer.putLong(start + 8, timestampNanos);
+        mBuffer.putInt(start + 16, data.length);
+        mBuffer.putInt(start, width);
+        mPosition += recordSize;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mBuffer = null;
+        try {
+            mChannel.truncate(mPosition);
+        } finally {
+            mFile.close();
+        }
+    }
+
+}
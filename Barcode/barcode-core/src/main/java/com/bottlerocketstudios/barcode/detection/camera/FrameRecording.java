@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.camera;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Read access to preview frames written by a {@link FrameRecorder}. The file starts with a magic
+ * number and version, followed by one record per frame: width, height, timestamp in nanoseconds,
+ * data length and the frame data exactly as the camera delivered it. Reading stops at the first
+ * incomplete record, so a recording cut short by a crash is still usable.
+ * <p>
+ * Frame data is read through a memory mapped window that is moved along the file as needed, so
+ * recordings larger than the address space are fine. Not thread safe.
+ * </p>
+ */
+public final class FrameRecording implements Closeable {
+
+    static final int MAGIC = 0x42524652;
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 20;
+
+    private static final long MAX_WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private long[] mOffsets = new long[64];
+    private int[] mWidths = new int[64];
+    private int[] mHeights = new int[64];
+    private long[] mTimestamps = new long[64];
+    private int[] mLengths = new int[64];
+    private int mFrameCount;
+    private MappedByteBuffer mWindow;
+    private long mWindowStart;
+
+    public FrameRecording(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        mChannel = mFile.getChannel();
+        try {
+            scan(mFile, this);
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Walk the record headers of a recording.
+     *
+     * @return The offset just past the last complete record.
+     * @throws IOException If the file is not a frame recording.
+     */
+    static long scan(RandomAccessFile file, FrameRecording index) throws IOException {
+        long fileLength = file.length();
+        if (fileLength < FILE_HEADER_SIZE) {
+            throw new IOException("Not a frame recording");
+        }
+        file.seek(0);
+        if (file.readInt() != MAGIC) {
+            throw new IOException("Not a frame recording");
+        }
+        int version = file.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported frame recording version " + version);
+        }
+        long offset = FILE_HEADER_SIZE;
+        while (offset + RECORD_HEADER_SIZE <= fileLength) {
+            file.seek(offset);
+            int width = file.readInt();
+            int height = file.readInt();
+            long timestamp = file.readLong();
+            int length = file.readInt();
+            if (width <= 0 || height <= 0 || length < width * height
+                    || offset + RECORD_HEADER_SIZE + length > fileLength) {
+                // The rest was preallocated but never written, or the recorder died mid frame.
+                break;
+            }
+            if (index != null) {
+                index.add(offset + RECORD_HEADER_SIZE, width, height, timestamp, length);
+            }
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    private void add(long offset, int width, int height, long timestamp, int length) {
+        if (mFrameCount == mOffsets.length) {
+            int capacity = mFrameCount * 2;
+            mOffsets = Arrays.copyOf(mOffsets, capacity);
+            mWidths = Arrays.copyOf(mWidths, capacity);
+            mHeights = Arrays.copyOf(mHeights, capacity);
+            mTimestamps = Arrays.copyOf(mTimestamps, capacity);
+            mLengths = Arrays.copyOf(mLengths, capacity);
+        }
+        mOffsets[mFrameCount] = offset;
+        mWidths[mFrameCount] = width;
+        mHeights[mFrameCount] = height;
+        mTimestamps[mFrameCount] = timestamp;
+        mLengths[mFrameCount] = length;
+        mFrameCount++;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public int getWidth(int frame) {
+        return mWidths[frame];
+    }
+
+    public int getHeight(int frame) {
+        return mHeights[frame];
+    }
+
+    /**
+     * @return When the frame was delivered, from {@link System#nanoTime()} on the recording device.
+     */
+    public long getTimestampNanos(int frame) {
+        return mTimestamps[frame];
+    }
+
+    public int getLength(int frame) {
+        return mLengths[frame];
+    }
+
+    /**
+     * Copy the data of a frame.
+     *
+     * @param data Receives the frame, at least {@link #getLength(int)} long.
+     */
+    public void readFrame(int frame, byte[] data) throws IOException {
+        long offset = mOffsets[frame];
+        int length = mLengths[frame];
+        if (mWindow == null || offset < mWindowStart || offset + length > mWindowStart + mWindow.capacity()) {
+            mWindowStart = offset;
+            long size = Math.max(length, Math.min(MAX_WINDOW_SIZE, mChannel.size() - offset));
+            mWindow = mChannel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        }
+        mWindow.position((int) (offset - mWindowStart));
+        mWindow.get(data, 0, length);
+    }
+
+    /**
+     * @return A new array holding the data of the frame.
+     */
+    public byte[] readFrame(int frame) throws IOException {
+        byte[] data = new byte[mLengths[frame]];
+        readFrame(frame, data);
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mWindow = null;
+        mFile.close();
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.camera;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * An upright view of a rectangle of an NV21 or other planar YUV frame captured in a different
+ * orientation, such as a landscape camera frame shown on a portrait screen. Nothing is copied up front,
+ * every pixel is found by index arithmetic from where the first pixel of the view is and how far apart
+ * neighbouring pixels are in the frame, so rotating costs no more than cropping with a
+ * {@link com.google.zxing.PlanarYUVLuminanceSource}. Crops and further rotations are views of the same
+ * frame.
+ */
+public final class RotatedLuminanceSource extends LuminanceSource {
+
+    private final byte[] yuvData;
+    /**
+     * Index of the top left pixel of the view.
+     */
+    private final int origin;
+    /**
+     * Index step to the next pixel to the right in the view.
+     */
+    private final int xStep;
+    /**
+     * Index step to the next pixel down in the view.
+     */
+    private final int yStep;
+
+    /**
+     * @param yuvData    The frame, luminance first, one byte per pixel, dataWidth bytes per row.
+     * @param dataWidth  Width of the frame in pixels.
+     * @param dataHeight Height of the frame in pixels.
+     * @param left       Left edge of the rectangle within the frame.
+     * @param top        Top edge of the rectangle within the frame.
+     * @param width      Width of the rectangle within the frame.
+     * @param height     Height of the rectangle within the frame.
+     * @param rotation   Degrees clockwise the rectangle is turned to be upright, 0, 90, 180 or 270. At 90
+     *                   and 270 the view is height wide and width high.
+     */
+    public RotatedLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight,
+                                  int left, int top, int width, int height, int rotation) {
+        this(yuvData,
+                rotation == 90 || rotation == 270 ? height : width,
+                rotation == 90 || rotation == 270 ? width : height,
+                findOrigin(dataWidth, left, top, width, height, rotation),
+                findXStep(dataWidth, rotation),
+                findYStep(dataWidth, rotation));
+        if (left < 0 || top < 0 || left + width > dataWidth || top + height > dataHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+    }
+
+    private RotatedLuminanceSource(byte[] yuvData, int width, int height, int origin, int xStep, int yStep) {
+        super(width, height);
+        this.yuvData = yuvData;
+        this.origin = origin;
+        this.xStep = xStep;
+        this.yStep = yStep;
+    }
+
+    private static int findOrigin(int dataWidth, int left, int top, int width, int height, int rotation) {
+        switch (rotation) {
+            case 0:
+                return top * dataWidth + left;
+            case 90:
+                // The bottom left corner of the rectangle ends up top left.
+                return (top + height - 1) * dataWidth + left;
+            case 180:
+                return (top + height - 1) * dataWidth + left + width - 1;
+            case 270:
+                return top * dataWidth + left + width - 1;
+            default:
+                throw new IllegalArgumentException("Rotation must be 0, 90, 180 or 270: " + rotation);
+        }
+    }
+
+    private static int findXStep(int dataWidth, int rotation) {
+        switch (rotation) {
+            case 90:
+                return -dataWidth;
+            case 180:
+                return -1;
+            case 270:
+                return dataWidth;
+            default:
+                return 1;
+        }
+    }
+
+    private static int findYStep(int dataWidth, int rotation) {
+        switch (rotation) {
+            case 90:
+                return 1;
+            case 180:
+                return -dataWidth;
+            case 270:
+                return -1;
+            default:
+                return dataWidth;
+        }
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        copyRow(y, row, 0);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        int width = getWidth();
+        int height = getHeight();
+        byte[] matrix = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            copyRow(y, matrix, y * width);
+        }
+        return matrix;
+    }
+
+    private void copyRow(int y, byte[] row, int offset) {
+        int index = origin + y * yStep;
+        if (xStep == 1) {
+            System.arraycopy(yuvData, index, row, offset, getWidth());
+            return;
+        }
+        int end = offset + getWidth();
+        for (int i = offset; i < end; i++, index += xStep) {
+            row[i] = yuvData[index];
+        }
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        if (left < 0 || top < 0 || left + width > getWidth() || top + height > getHeight()) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+        return new RotatedLuminanceSource(yuvData, width, height,
+                origin + left * xStep + top * yStep, xStep, yStep);
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        // The right hand column becomes the top row.
+        return new RotatedLuminanceSource(yuvData, getHeight(), getWidth(),
+                origin + (getWidth() - 1) * xStep, yStep, -xStep);
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bottlerocketstudios.barcode.detection.camera;
+
+import com.google.zxing.LuminanceSource;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads luminance straight out of the Y plane of a YUV_420_888 image, honouring its row stride,
+ * so the frame never has to be repacked into NV21.
+ */
+final class YPlaneLuminanceSource extends LuminanceSource {
+
+    private final ByteBuffer yPlane;
+    private final int rowStride;
+    private final int dataWidth;
+    private final int dataHeight;
+    private final int left;
+    private final int top;
+
+    YPlaneLuminanceSource(ByteBuffer yPlane, int rowStride, int dataWidth, int dataHeight,
+                          int left, int top, int width, int height) {
+        super(width, height);
+        if (left + width > dataWidth || top + height > dataHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+        // Each source gets its own position so crops can be read independently.
+        this.yPlane = yPlane.duplicate();
+        this.rowStride = rowStride;
+        this.dataWidth = dataWidth;
+        this.dataHeight = dataHeight;
+        this.left = left;
+        this.top = top;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        yPlane.position((y + top) * rowStride + left);
+        yPlane.get(row, 0, width);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        int width = getWidth();
+        int height = getHeight();
+        byte[] matrix = new byte[width * height];
+
+        // If the width matches the row stride the whole crop can be read in one go.
+        if (left == 0 && width == rowStride) {
+            yPlane.position(top * rowStride);
+            yPlane.get(matrix);
+            return matrix;
+        }
+
+        for (int y = 0; y < height; y++) {
+            yPlane.position((y + top) * rowStride + left);
+            yPlane.get(matrix, y * width, width);
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        return new YPlaneLuminanceSource(yPlane, rowStride, dataWidth, dataHeight,
+                this.left + left, this.top + top, width, height);
+    }
+
+}
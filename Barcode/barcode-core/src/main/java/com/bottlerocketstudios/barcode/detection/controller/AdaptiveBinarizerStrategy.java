@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+/**
+ * Uses the much cheaper {@link GlobalHistogramBinarizer} for frames that are evenly lit and have good
+ * contrast, and {@link HybridBinarizer} for everything else. Lighting is judged from a coarse grid of
+ * samples. The decision is also weighed against the recent success rate of each binarizer, and every
+ * few frames the other binarizer is tried so that both rates stay current.
+ */
+public final class AdaptiveBinarizerStrategy implements BinarizerStrategy {
+
+    /**
+     * Samples taken along each edge of the frame.
+     */
+    private static final int SAMPLE_GRID = 32;
+
+    private static final int LUMINANCE_BITS = 5;
+    private static final int LUMINANCE_SHIFT = 8 - LUMINANCE_BITS;
+    private static final int LUMINANCE_BUCKETS = 1 << LUMINANCE_BITS;
+
+    /**
+     * Spread between the 5th and 95th percentile of luminance needed for a single global threshold.
+     */
+    private static final int MIN_CONTRAST = 64;
+
+    /**
+     * Largest difference between the mean luminance of two quadrants that still counts as even lighting.
+     */
+    private static final int MAX_UNEVENNESS = 48;
+
+    /**
+     * Weight kept by the older statistics every time a binarizer is used.
+     */
+    private static final float DECAY = 0.95f;
+
+    /**
+     * How much worse the global binarizer may do than the hybrid one before it is no longer preferred.
+     */
+    private static final float SUCCESS_MARGIN = 0.1f;
+
+    /**
+     * Every this many frames the binarizer that would not have been chosen is used instead.
+     */
+    private static final int EXPLORE_INTERVAL = 8;
+
+    private float mGlobalAttempts;
+    private float mGlobalSuccesses;
+    private float mHybridAttempts;
+    private float mHybridSuccesses;
+    private int mFrameCount;
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        boolean evenlyLit = isEvenlyLit(source);
+        boolean useGlobal;
+        synchronized (this) {
+            useGlobal = evenlyLit && successRate(mGlobalSuccesses, mGlobalAttempts) + SUCCESS_MARGIN
+                    >= successRate(mHybridSuccesses, mHybridAttempts);
+            if (++mFrameCount % EXPLORE_INTERVAL == 0) {
+                useGlobal = !useGlobal;
+            }
+        }
+        return useGlobal ? new GlobalHistogramBinarizer(source) : new HybridBinarizer(source);
+    }
+
+    @Override
+    public synchronized void onDecodeAttempted(Binarizer binarizer, boolean decoded) {
+        // HybridBinarizer extends GlobalHistogramBinarizer, so check for it first.
+        if (binarizer instanceof HybridBinarizer) {
+            mHybridAttempts = mHybridAttempts * DECAY + 1;
+            mHybridSuccesses = mHybridSuccesses * DECAY + (decoded ? 1 : 0);
+        } else if (binarizer instanceof GlobalHistogramBinarizer) {
+            mGlobalAttempts = mGlobalAttempts * DECAY + 1;
+            mGlobalSuccesses = mGlobalSuccesses * DECAY + (decoded ? 1 : 0);
+        }
+    }
+
+    /**
+     * Laplace smoothed, so a binarizer that has barely been used is neither trusted nor written off.
+     */
+    private static float successRate(float successes, float attempts) {
+        return (successes + 1) / (attempts + 2);
+    }
+
+    private static boolean isEvenlyLit(LuminanceSource source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int stepX = Math.max(1, width / SAMPLE_GRID);
+        int stepY = Math.max(1, height / SAMPLE_GRID);
+
+        int[] histogram = new int[LUMINANCE_BUCKETS];
+        int[] quadrantSums = new int[4];
+        int[] quadrantCounts = new int[4];
+        int sampleCount = 0;
+        byte[] row = null;
+        for (int y = stepY / 2; y < height; y += stepY) {
+            row = source.getRow(y, row);
+            int quadrantRow = y * 2 / height * 2;
+            for (int x = stepX / 2; x < width; x += stepX) {
+                int luminance = row[x] & 0xff;
+                histogram[luminance >> LUMINANCE_SHIFT]++;
+                int quadrant = quadrantRow + x * 2 / width;
+                quadrantSums[quadrant] += luminance;
+                quadrantCounts[quadrant]++;
+                sampleCount++;
+            }
+        }
+        if (sampleCount == 0) {
+            return false;
+        }
+
+        int darkBucket = percentileBucket(histogram, sampleCount / 20);
+        int lightBucket = percentileBucket(histogram, sampleCount - sampleCount / 20);
+        if ((lightBucket - darkBucket) << LUMINANCE_SHIFT < MIN_CONTRAST) {
+            return false;
+        }
+
+        int minMean = Integer.MAX_VALUE;
+        int maxMean = Integer.MIN_VALUE;
+        for (int i = 0; i < quadrantSums.length; i++) {
+            if (quadrantCounts[i] > 0) {
+                int mean = quadrantSums[i] / quadrantCounts[i];
+                minMean = Math.min(minMean, mean);
+                maxMean = Math.max(maxMean, mean);
+            }
+        }
+        return maxMean - minMean <= MAX_UNEVENNESS;
+    }
+
+    /**
+     * @return The bucket containing the rank-th darkest sample.
+     */
+    private static int percentileBucket(int[] histogram, int rank) {
+        int seen = 0;
+        for (int bucket = 0; bucket < histogram.length; bucket++) {
+            seen += histogram[bucket];
+            if (seen > rank) {
+                return bucket;
+            }
+        }
+        return histogram.length - 1;
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.aztec.AztecReader;
+import com.google.zxing.datamatrix.DataMatrixReader;
+import com.google.zxing.maxicode.MaxiCodeReader;
+import com.google.zxing.oned.MultiFormatOneDReader;
+import com.google.zxing.oned.MultiFormatUPCEANReader;
+import com.google.zxing.pdf417.PDF417Reader;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A replacement for {@link com.google.zxing.MultiFormatReader} that tries its readers in order of how
+ * often their formats have been decoded lately, as recorded in a shared {@link FormatHitRates}. Once
+ * enough barcodes have been seen, readers whose formats make up only a sliver of the hits are skipped,
+ * except on every few frames so that a change in what is being scanned is still noticed. Without a
+ * {@link FormatHitRates} the same readers are tried in the same order as MultiFormatReader would, which
+ * is still worth it for the chance to check the deadline between formats and to tell the 1D readers'
+ * points apart, see {@link PointCollector#getOneDCallback()}.
+ * <p>
+ * The hints are fixed when the reader is created, the hints passed to
+ * {@link #decode(BinaryBitmap, Map)} are ignored. The frame's {@link DecodeDeadline} is checked before
+ * each reader.
+ * </p>
+ */
+final class AdaptiveMultiFormatReader implements Reader {
+
+    /**
+     * Decayed hits needed before any reader is skipped.
+     */
+    private static final float MIN_HITS_TO_SKIP = 10f;
+
+    /**
+     * Readers with a smaller share of the recent hits than this are skipped.
+     */
+    private static final float SKIP_SHARE = 0.05f;
+
+    /**
+     * Every this many frames all readers are tried regardless of their hit rate.
+     */
+    private static final int RETRY_INTERVAL = 4;
+
+    private static final EnumSet<BarcodeFormat> UPC_EAN_FORMATS = EnumSet.of(
+            BarcodeFormat.UPC_A, BarcodeFormat.UPC_E, BarcodeFormat.EAN_13, BarcodeFormat.EAN_8);
+
+    private static final EnumSet<BarcodeFormat> OTHER_ONE_D_FORMATS = EnumSet.of(
+            BarcodeFormat.CODE_39, BarcodeFormat.CODE_93, BarcodeFormat.CODE_128, BarcodeFormat.ITF,
+            BarcodeFormat.CODABAR, BarcodeFormat.RSS_14, BarcodeFormat.RSS_EXPANDED);
+
+    private final Map<DecodeHintType, ?> mHints;
+    private final FormatHitRates mHitRates;
+    private final DecodeDeadline mDeadline;
+    private final Entry[] mEntries;
+    private final float[] mHits = new float[BarcodeFormat.values().length];
+    private int mFrameCount;
+
+    /**
+     * @param hitRates Recent hits to order the readers by, or null to keep them in a fixed order.
+     */
+    AdaptiveMultiFormatReader(Map<DecodeHintType, ?> hints, FormatHitRates hitRates, DecodeDeadline deadline) {
+        mHints = hints;
+        mHitRates = hitRates;
+        mDeadline = deadline;
+
+        @SuppressWarnings("unchecked")
+        Collection<BarcodeFormat> formats = (Collection<BarcodeFormat>) hints.get(DecodeHintType.POSSIBLE_FORMATS);
+        if (formats == null || formats.isEmpty()) {
+            formats = EnumSet.allOf(BarcodeFormat.class);
+        }
+
+        List<Entry> entries = new ArrayList<Entry>();
+        // Like MultiFormatReader, the slow 1D scan goes last when trying harder. Ties in the hit rates
+        // keep this order too.
+        boolean oneDLast = hints.containsKey(DecodeHintType.TRY_HARDER);
+        if (!oneDLast) {
+            addOneDEntries(entries, formats, hints, hitRates != null);
+        }
+        addEntry(entries, formats, BarcodeFormat.QR_CODE, new QRCodeReader());
+        addEntry(entries, formats, BarcodeFormat.DATA_MATRIX, new DataMatrixReader());
+        addEntry(entries, formats, BarcodeFormat.AZTEC, new AztecReader());
+        addEntry(entries, formats, BarcodeFormat.PDF_417, new PDF417Reader());
+        addEntry(entries, formats, BarcodeFormat.MAXICODE, new MaxiCodeReader());
+        if (oneDLast) {
+            addOneDEntries(entries, formats, hints, hitRates != null);
+        }
+
+        mEntries = entries.toArray(new Entry[entries.size()]);
+    }
+
+    @Override
+    public Result decode(BinaryBitmap image) throws NotFoundException {
+        float total = 0;
+        boolean tryAll = true;
+        if (mHitRates != null) {
+            total = mHitRates.copyHits(mHits);
+            for (Entry entry : mEntries) {
+                entry.score = 0;
+                for (BarcodeFormat format : entry.formats) {
+                    entry.score += mHits[format.ordinal()];
+                }
+            }
+            sortByScore(mEntries);
+            tryAll = total < MIN_HITS_TO_SKIP || ++mFrameCount % RETRY_INTERVAL == 0;
+        }
+
+        for (Entry entry : mEntries) {
+            if (!tryAll && entry.score < total * SKIP_SHARE) {
+                continue;
+            }
+            mDeadline.check();
+            try {
+                Result result = entry.reader.decode(image, mHints);
+                if (mHitRates != null) {
+                    mHitRates.onDecoded(result.getBarcodeFormat());
+                }
+                return result;
+            } catch (ReaderException re) {
+                // continue
+            }
+        }
+        throw NotFoundException.getNotFoundInstance();
+    }
+
+    @Override
+    public Result decode(BinaryBitmap image, Map<DecodeHintType, ?> hints) throws NotFoundException {
+        return decode(image);
+    }
+
+    @Override
+    public void reset() {
+        for (Entry entry : mEntries) {
+            entry.reader.reset();
+        }
+    }
+
+    /**
+     * Insertion sort, highest score first. There are only a handful of entries and they are usually
+     * already in order, and unlike Arrays.sort this does not allocate.
+     */
+    private static void sortByScore(Entry[] entries) {
+        for (int i = 1; i < entries.length; i++) {
+            Entry entry = entries[i];
+            int j = i - 1;
+            while (j >= 0 && entries[j].score < entry.score) {
+                entries[j + 1] = entries[j];
+                j--;
+            }
+            entries[j + 1] = entry;
+        }
+    }
+
+    /**
+     * @param split True to give UPC/EAN an entry of its own, so that it can be ordered apart from the
+     *              other 1D formats at the cost of a second scan of the rows.
+     */
+    private static void addOneDEntries(List<Entry> entries, Collection<BarcodeFormat> formats,
+                                       Map<DecodeHintType, ?> hints, boolean split) {
+        Map<DecodeHintType, Object> oneDHints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        oneDHints.putAll(hints);
+        Object callback = hints.get(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
+        if (callback instanceof PointCollector) {
+            oneDHints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, ((PointCollector) callback).getOneDCallback());
+        }
+        if (!split) {
+            // One reader for all of them, as MultiFormatReader has.
+            EnumSet<BarcodeFormat> oneD = intersect(formats, UPC_EAN_FORMATS);
+            oneD.addAll(intersect(formats, OTHER_ONE_D_FORMATS));
+            if (!oneD.isEmpty()) {
+                entries.add(new Entry(new MultiFormatOneDReader(oneDHints), oneD));
+            }
+            return;
+        }
+        EnumSet<BarcodeFormat> upcEan = intersect(formats, UPC_EAN_FORMATS);
+        if (!upcEan.isEmpty()) {
+            entries.add(new Entry(new MultiFormatUPCEANReader(oneDHints), upcEan));
+        }
+        EnumSet<BarcodeFormat> otherOneD = intersect(formats, OTHER_ONE_D_FORMATS);
+        if (!otherOneD.isEmpty()) {
+            // Keep the UPC/EAN readers out of this one, they already have their own entry.
+            oneDHints = new EnumMap<DecodeHintType, Object>(oneDHints);
+            oneDHints.put(DecodeHintType.POSSIBLE_FORMATS, otherOneD);
+            entries.add(new Entry(new MultiFormatOneDReader(oneDHints), otherOneD));
+        }
+    }
+
+    private static void addEntry(List<Entry> entries, Collection<BarcodeFormat> formats, BarcodeFormat format, Reader reader) {
+        if (formats.contains(format)) {
+            entries.add(new Entry(reader, EnumSet.of(format)));
+        }
+    }
+
+    private static EnumSet<BarcodeFormat> intersect(Collection<BarcodeFormat> formats, EnumSet<BarcodeFormat> family) {
+        EnumSet<BarcodeFormat> intersection = EnumSet.noneOf(BarcodeFormat.class);
+        for (BarcodeFormat format : formats) {
+            if (family.contains(format)) {
+                intersection.add(format);
+            }
+        }
+        return intersection;
+    }
+
+    private static final class Entry {
+        final Reader reader;
+        final BarcodeFormat[] formats;
+        float score;
+
+        Entry(Reader reader, EnumSet<BarcodeFormat> formats) {
+            this.reader = reader;
+            this.formats = formats.toArray(new BarcodeFormat[formats.size()]);
+        }
+    }
+
+}
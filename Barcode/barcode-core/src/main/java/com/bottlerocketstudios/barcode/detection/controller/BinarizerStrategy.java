@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Chooses the {@link Binarizer} used for each decode attempt. Set one with
+ * {@code ZXingConfiguration.setBinarizerStrategy()} when scanning, or
+ * {@link FrameDecoder.FrameDecoderBuilder#binarizerStrategy(BinarizerStrategy)}.
+ * A single instance is shared by every decode worker, so implementations must be thread safe.
+ */
+public interface BinarizerStrategy {
+
+    /**
+     * @param source The luminance about to be decoded.
+     * @return A new binarizer for the source.
+     */
+    public Binarizer createBinarizer(LuminanceSource source);
+
+    /**
+     * Called once the readers are done with a binarizer returned by {@link #createBinarizer(LuminanceSource)},
+     * unless the frame was abandoned for running out of time.
+     *
+     * @param binarizer The binarizer that was used.
+     * @param decoded   True if a barcode was found.
+     */
+    public void onDecodeAttempted(Binarizer binarizer, boolean decoded);
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+/**
+ * The time by which the frame being decoded must be done. The readers can't be interrupted, so they are
+ * made to check it themselves wherever they call back into the decoder: each time they binarize a row
+ * or the whole image, report a possible result point or move on to the next reader. Used only from the
+ * decode thread that owns it.
+ */
+final class DecodeDeadline {
+
+    private long mDeadlineNanos;
+    private boolean mSet;
+
+    /**
+     * @param budgetNanos Time from now until the frame is abandoned.
+     */
+    void start(long budgetNanos) {
+        mDeadlineNanos = System.nanoTime() + budgetNanos;
+        mSet = true;
+    }
+
+    void clear() {
+        mSet = false;
+    }
+
+    /**
+     * @return True if the deadline has passed, without throwing.
+     */
+    boolean isPassed() {
+        return mSet && System.nanoTime() - mDeadlineNanos >= 0;
+    }
+
+    /**
+     * @throws DecodeTimeoutException If the deadline has passed.
+     */
+    void check() {
+        if (mSet) {
+            check(System.nanoTime());
+        }
+    }
+
+    /**
+     * @param now The current {@link System#nanoTime()}, for callers that already have it.
+     * @throws DecodeTimeoutException If the deadline has passed.
+     */
+    void check(long now) {
+        if (mSet && now - mDeadlineNanos >= 0) {
+            throw DecodeTimeoutException.getInstance();
+        }
+    }
+
+}
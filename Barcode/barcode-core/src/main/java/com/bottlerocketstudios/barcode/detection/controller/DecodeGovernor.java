@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+/**
+ * Paces decoding to a target share of CPU time, so a scanner left running with nothing in front of it
+ * doesn't keep every core busy until the device heats up and throttles. Keeps a decaying average of
+ * how long a frame takes to decode and of how often frames yield a barcode. While frames come up
+ * empty, the next frames are requested only after a wait long enough to keep the workers busy just the
+ * target share of the time. The wait grows with the cost of a frame,
+ * which rises as a throttled CPU slows down, and shrinks as more frames succeed. As soon as a barcode
+ * is found or part of one is seen, such as the finder patterns of a QR code, decoding goes back to
+ * full speed for a while. The start guards the 1D readers report on almost any textured scene don't
+ * count, or decoding would hardly ever be paced at all. Instances are shared by all decode workers.
+ */
+final class DecodeGovernor {
+
+    /**
+     * Weight of the latest frame in the averages.
+     */
+    private static final float SMOOTHING = 0.2f;
+
+    /**
+     * Frames decoded at full speed after the last sign of a barcode, and when scanning starts.
+     */
+    private static final int FULL_SPEED_FRAMES = 15;
+
+    private static final int MAX_DELAY_MS = 1000;
+
+    private final int mDutyCyclePercent;
+    private float mCostMs;
+    private float mSuccessRate;
+    private boolean mMeasured;
+    private int mFullSpeedFrames = FULL_SPEED_FRAMES;
+
+    /**
+     * @param dutyCyclePercent Share of the time, from 1 to 99, each worker is kept busy while nothing
+     *                         is being found.
+     */
+    DecodeGovernor(int dutyCyclePercent) {
+        mDutyCyclePercent = Math.max(1, Math.min(99, dutyCyclePercent));
+    }
+
+    /**
+     * Go back to full speed, as when a new preview session starts.
+     */
+    synchronized void reset() {
+        mFullSpeedFrames = FULL_SPEED_FRAMES;
+    }
+
+    /**
+     * Record the outcome of a frame.
+     *
+     * @param decodeNanos Time spent decoding it.
+     * @param decoded     True if a barcode was found.
+     * @param partial     True if part of a barcode was seen, see {@link FrameDecoder#isLastFramePartial()}.
+     */
+    synchronized void onFrameDecoded(long decodeNanos, boolean decoded, boolean partial) {
+        float costMs = decodeNanos / 1000000f;
+        float success = decoded ? 1f : 0f;
+        if (mMeasured) {
+            mCostMs += SMOOTHING * (costMs - mCostMs);
+            mSuccessRate += SMOOTHING * (success - mSuccessRate);
+        } else {
+            mCostMs = costMs;
+            mSuccessRate = success;
+            mMeasured = true;
+        }
+        if (decoded || partial) {
+            mFullSpeedFrames = FULL_SPEED_FRAMES;
+        } else if (mFullSpeedFrames > 0) {
+            mFullSpeedFrames--;
+        }
+    }
+
+    /**
+     * @return Milliseconds to wait after a failed frame before requesting the next one, 0 at full speed.
+     */
+    synchronized int getFrameDelayMs() {
+        if (mFullSpeedFrames > 0) {
+            return 0;
+        }
+        // Busy for the cost of a frame, then idle so that the busy time is the target share.
+        float delayMs = mCostMs * (100 - mDutyCyclePercent) / mDutyCyclePercent * (1f - mSuccessRate);
+        return (int) Math.min(MAX_DELAY_MS, delayMs);
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.bottlerocketstudios.barcode.detection.model.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timing and throughput of the scanning pipeline for the lifetime of a scanner or a
+ * {@link FrameDecoder}, so devices can be compared in the field without a profiler. Every stage of a
+ * frame is timed with {@link System#nanoTime()}:
+ * <ul>
+ * <li>Frame wait, from requesting a preview frame to the camera delivering it.</li>
+ * <li>Luminance source, building the luminance view of the framing rectangle.</li>
+ * <li>Binarization, all time spent turning luminance into black and white rows or matrices.</li>
+ * <li>Reader decode, the rest of the time spent in the readers.</li>
+ * <li>Result delivery, from a barcode being found to it being handed to the listener.</li>
+ * </ul>
+ * Use {@link #snapshot()} for a consistent copy, the live instance keeps changing while scanning.
+ */
+public final class DecodeMetrics {
+
+    private final LatencyHistogram mFrameWait;
+    private final LatencyHistogram mLuminanceSource;
+    private final LatencyHistogram mBinarization;
+    private final LatencyHistogram mReaderDecode;
+    private final LatencyHistogram mResultDelivery;
+    private final LatencyHistogram mTimeToFirstDecode;
+    private final AtomicLong mFramesProcessed;
+    private final AtomicLong mFramesDropped;
+    private final AtomicLong mFramesDecoded;
+    private final AtomicLong mFramesTimedOut;
+
+    DecodeMetrics() {
+        mFrameWait = new LatencyHistogram();
+        mLuminanceSource = new LatencyHistogram();
+        mBinarization = new LatencyHistogram();
+        mReaderDecode = new LatencyHistogram();
+        mResultDelivery = new LatencyHistogram();
+        mTimeToFirstDecode = new LatencyHistogram();
+        mFramesProcessed = new AtomicLong();
+        mFramesDropped = new AtomicLong();
+        mFramesDecoded = new AtomicLong();
+        mFramesTimedOut = new AtomicLong();
+    }
+
+    private DecodeMetrics(DecodeMetrics source) {
+        mFrameWait = source.mFrameWait.copy();
+        mLuminanceSource = source.mLuminanceSource.copy();
+        mBinarization = source.mBinarization.copy();
+        mReaderDecode = source.mReaderDecode.copy();
+        mResultDelivery = source.mResultDelivery.copy();
+        mTimeToFirstDecode = source.mTimeToFirstDecode.copy();
+        mFramesProcessed = new AtomicLong(source.mFramesProcessed.get());
+        mFramesDropped = new AtomicLong(source.mFramesDropped.get());
+        mFramesDecoded = new AtomicLong(source.mFramesDecoded.get());
+        mFramesTimedOut = new AtomicLong(source.mFramesTimedOut.get());
+    }
+
+    /**
+     * @return A copy that is no longer updated.
+     */
+    public DecodeMetrics snapshot() {
+        return new DecodeMetrics(this);
+    }
+
+    void onFrameProcessed(boolean decoded) {
+        mFramesProcessed.incrementAndGet();
+        if (decoded) {
+            mFramesDecoded.incrementAndGet();
+        }
+    }
+
+    void onFrameTimedOut() {
+        mFramesTimedOut.incrementAndGet();
+    }
+
+    void onFrameDropped() {
+        mFramesDropped.incrementAndGet();
+    }
+
+    public LatencyHistogram getFrameWait() {
+        return mFrameWait;
+    }
+
+    public LatencyHistogram getLuminanceSource() {
+        return mLuminanceSource;
+    }
+
+    public LatencyHistogram getBinarization() {
+        return mBinarization;
+    }
+
+    public LatencyHistogram getReaderDecode() {
+        return mReaderDecode;
+    }
+
+    public LatencyHistogram getResultDelivery() {
+        return mResultDelivery;
+    }
+
+    /**
+     * @return Time from the preview starting to the first barcode found, one entry per preview session.
+     */
+    public LatencyHistogram getTimeToFirstDecode() {
+        return mTimeToFirstDecode;
+    }
+
+    /**
+     * @return Frames delivered by the camera to the decoder, whether they were decoded or dropped.
+     */
+    public long getFramesCaptured() {
+        return mFramesProcessed.get() + mFramesDropped.get();
+    }
+
+    /**
+     * @return Frames handed to a decode worker, including those the worker skipped without decoding.
+     */
+    public long getFramesProcessed() {
+        return mFramesProcessed.get();
+    }
+
+    /**
+     * @return Frames that yielded at least one barcode.
+     */
+    public long getFramesDecoded() {
+        return mFramesDecoded.get();
+    }
+
+    /**
+     * @return Frames abandoned part way through for running over the frame time budget, or that ran
+     * over it in a stretch of reader code that never checks the time. They are also counted as
+     * processed.
+     */
+    public long getFramesTimedOut() {
+        return mFramesTimedOut.get();
+    }
+
+    /**
+     * @return Frames discarded because every decode worker was busy or a result had already been found.
+     */
+    public long getFramesDropped() {
+        return mFramesDropped.get();
+    }
+
+    @Override
+    public String toString() {
+        return "captured=" + getFramesCaptured() + " processed=" + getFramesProcessed()
+                + " decoded=" + getFramesDecoded() + " timedOut=" + getFramesTimedOut()
+                + " dropped=" + getFramesDropped()
+                + "\nframeWait " + mFrameWait
+                + "\nluminanceSource " + mLuminanceSource
+                + "\nbinarization " + mBinarization
+                + "\nreaderDecode " + mReaderDecode
+                + "\nresultDelivery " + mResultDelivery
+                + "\ntimeToFirstDecode " + mTimeToFirstDecode;
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+/**
+ * State that carries over from one frame to the next and is shared by every {@link FrameDecoder}
+ * decoding the same stream of frames, such as the decode workers of a scanner. Anything reachable from
+ * here must be safe to use from several decode threads at once.
+ */
+final class DecodeSession {
+
+    private final RegionTracker mRegionTracker;
+    private final DecodeStatistics mDecodeStatistics;
+    private final DecodeMetrics mDecodeMetrics;
+    private final FormatHitRates mFormatHitRates;
+    private final FrameQualityGate mFrameQualityGate;
+    private final DuplicateFrameDetector mDuplicateFrameDetector;
+    private final ResultDeduplicator mResultDeduplicator;
+    private final InversionTracker mInversionTracker;
+    private final TryHarderScheduler mTryHarderScheduler;
+    private final DecodeGovernor mDecodeGovernor;
+
+    /**
+     * Any feature given a value of zero, or false, is disabled.
+     *
+     * @param regionTrackingMisses Failed frames before a tracked region is abandoned.
+     * @param adaptiveReaderOrder  Try the readers for the formats found recently first.
+     * @param minSharpness         Skip frames less sharp than this.
+     * @param minContrast          Skip frames with less contrast than this.
+     * @param duplicateThreshold   Skip frames this similar to the last one that failed.
+     * @param repeatWindowMs       Suppress results seen again within this many milliseconds.
+     * @param invertMisses         Failed frames before switching between normal and inverted decoding.
+     * @param tryHarderInterval    Decode every this many frames trying harder.
+     * @param tryHarderMisses      Decode the frame after this many failed ones trying harder.
+     * @param dutyCyclePercent     Share of the time workers are kept busy while nothing is found, 100
+     *                             or more to decode flat out.
+     */
+    DecodeSession(int regionTrackingMisses,
+                  boolean adaptiveReaderOrder,
+                  int minSharpness,
+                  int minContrast,
+                  int duplicateThreshold,
+                  int repeatWindowMs,
+                  int invertMisses,
+                  int tryHarderInterval,
+                  int tryHarderMisses,
+                  int dutyCyclePercent,
+                  DecodeStatistics decodeStatistics,
+                  DecodeMetrics decodeMetrics) {
+        mDecodeStatistics = decodeStatistics;
+        mDecodeMetrics = decodeMetrics;
+        mRegionTracker = regionTrackingMisses > 0 ? new RegionTracker(regionTrackingMisses) : null;
+        mFormatHitRates = adaptiveReaderOrder ? new FormatHitRates() : null;
+        mFrameQualityGate = minSharpness > 0 || minContrast > 0
+                ? new FrameQualityGate(minSharpness, minContrast)
+                : null;
+        mDuplicateFrameDetector = duplicateThreshold > 0 ? new DuplicateFrameDetector(duplicateThreshold) : null;
+        mResultDeduplicator = repeatWindowMs > 0 ? new ResultDeduplicator(repeatWindowMs) : null;
+        mInversionTracker = invertMisses > 0 ? new InversionTracker(invertMisses) : null;
+        mTryHarderScheduler = tryHarderInterval > 0 || tryHarderMisses > 0
+                ? new TryHarderScheduler(tryHarderInterval, tryHarderMisses)
+                : null;
+        mDecodeGovernor = dutyCyclePercent > 0 && dutyCyclePercent < 100
+                ? new DecodeGovernor(dutyCyclePercent)
+                : null;
+    }
+
+    /**
+     * @return The tracker for the decode region, or null if region tracking is disabled.
+     */
+    RegionTracker getRegionTracker() {
+        return mRegionTracker;
+    }
+
+    /**
+     * @return Recent hits per barcode format, or null if readers are always tried in a fixed order.
+     */
+    FormatHitRates getFormatHitRates() {
+        return mFormatHitRates;
+    }
+
+    /**
+     * @return The check run on every frame before it is decoded, or null if every frame is decoded.
+     */
+    FrameQualityGate getFrameQualityGate() {
+        return mFrameQualityGate;
+    }
+
+    /**
+     * @return The detector for unchanged scenes, or null if every frame is decoded.
+     */
+    DuplicateFrameDetector getDuplicateFrameDetector() {
+        return mDuplicateFrameDetector;
+    }
+
+    /**
+     * @return The filter for repeated results while scanning continuously, or null if every result is reported.
+     */
+    ResultDeduplicator getResultDeduplicator() {
+        return mResultDeduplicator;
+    }
+
+    /**
+     * @return The choice between normal and inverted decoding, or null if frames are never inverted.
+     */
+    InversionTracker getInversionTracker() {
+        return mInversionTracker;
+    }
+
+    /**
+     * @return The choice of frames decoded trying harder, or null if the hints are never escalated.
+     */
+    TryHarderScheduler getTryHarderScheduler() {
+        return mTryHarderScheduler;
+    }
+
+    /**
+     * @return The pace of decoding while nothing is found, or null if decoding runs flat out.
+     */
+    DecodeGovernor getDecodeGovernor() {
+        return mDecodeGovernor;
+    }
+
+    DecodeStatistics getDecodeStatistics() {
+        return mDecodeStatistics;
+    }
+
+    DecodeMetrics getDecodeMetrics() {
+        return mDecodeMetrics;
+    }
+
+}
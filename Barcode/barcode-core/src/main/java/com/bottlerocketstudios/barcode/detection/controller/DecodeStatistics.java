@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Running counters describing how frames were decoded, kept for the lifetime of a scanner or a
+ * {@link FrameDecoder} so that the scanning configuration can be tuned per deployment. Counters are
+ * updated from the decode threads and may be read from any thread.
+ */
+public final class DecodeStatistics {
+
+    /**
+     * Largest downsampling factor tracked, see {@link FrameDecoder.FrameDecoderBuilder#pyramidDownsample(int)}.
+     */
+    static final int MAX_DOWNSAMPLE_FACTOR = 4;
+
+    private final AtomicLongArray mPyramidLevelSuccesses = new AtomicLongArray(MAX_DOWNSAMPLE_FACTOR + 1);
+    private final AtomicLong mBlurryFramesSkipped = new AtomicLong();
+    private final AtomicLong mLowContrastFramesSkipped = new AtomicLong();
+    private final AtomicLong mDuplicateFramesSkipped = new AtomicLong();
+    private final AtomicLong mRepeatResultsSuppressed = new AtomicLong();
+    private final AtomicLong mInvertedFramesDecoded = new AtomicLong();
+    private final AtomicLong mTryHarderFrames = new AtomicLong();
+    private final AtomicLong mTryHarderFramesDecoded = new AtomicLong();
+
+    DecodeStatistics() {
+    }
+
+    /**
+     * @param downsampleFactor 1 for full resolution, otherwise the factor the successful pass was downsampled by.
+     */
+    void onPyramidLevelDecoded(int downsampleFactor) {
+        mPyramidLevelSuccesses.incrementAndGet(downsampleFactor);
+    }
+
+    /**
+     * @param downsampleFactor 1 for full resolution, 2 or 4 for the coarse pyramid levels.
+     * @return Number of barcodes found at that level.
+     */
+    public long getPyramidLevelSuccessCount(int downsampleFactor) {
+        if (downsampleFactor < 1 || downsampleFactor > MAX_DOWNSAMPLE_FACTOR) {
+            return 0;
+        }
+        return mPyramidLevelSuccesses.get(downsampleFactor);
+    }
+
+    /**
+     * @param reason {@link FrameQualityGate#BLURRY} or {@link FrameQualityGate#LOW_CONTRAST}.
+     */
+    void onFrameSkipped(int reason) {
+        if (reason == FrameQualityGate.BLURRY) {
+            mBlurryFramesSkipped.incrementAndGet();
+        } else if (reason == FrameQualityGate.LOW_CONTRAST) {
+            mLowContrastFramesSkipped.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return Frames skipped for scoring below the minimum sharpness.
+     */
+    public long getBlurryFrameSkipCount() {
+        return mBlurryFramesSkipped.get();
+    }
+
+    /**
+     * @return Frames skipped for scoring below the minimum contrast.
+     */
+    public long getLowContrastFrameSkipCount() {
+        return mLowContrastFramesSkipped.get();
+    }
+
+    void onDuplicateFrameSkipped() {
+        mDuplicateFramesSkipped.incrementAndGet();
+    }
+
+    /**
+     * @return Frames skipped for being within the duplicate frame threshold
+     * of the last frame that failed to decode.
+     */
+    public long getDuplicateFrameSkipCount() {
+        return mDuplicateFramesSkipped.get();
+    }
+
+    void onRepeatResultSuppressed() {
+        mRepeatResultsSuppressed.incrementAndGet();
+    }
+
+    /**
+     * @return Barcodes not reported while scanning continuously because they were seen within
+     * the repeat window.
+     */
+    public long getRepeatResultSuppressedCount() {
+        return mRepeatResultsSuppressed.get();
+    }
+
+    void onInvertedFrameDecoded() {
+        mInvertedFramesDecoded.incrementAndGet();
+    }
+
+    /**
+     * @return Frames whose barcodes were found by decoding them inverted.
+     */
+    public long getInvertedFrameDecodeCount() {
+        return mInvertedFramesDecoded.get();
+    }
+
+    void onTryHarderFrame(boolean decoded) {
+        mTryHarderFrames.incrementAndGet();
+        if (decoded) {
+            mTryHarderFramesDecoded.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return Frames decoded trying harder.
+     */
+    public long getTryHarderFrameCount() {
+        return mTryHarderFrames.get();
+    }
+
+    /**
+     * @return Frames decoded trying harder in which a barcode was found.
+     */
+    public long getTryHarderFrameDecodeCount() {
+        return mTryHarderFramesDecoded.get();
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+/**
+ * Thrown from inside the readers when a frame has used up its time budget, to unwind the decode
+ * straight back to the {@link FrameDecoder}. Unchecked so the readers, which only catch
+ * {@link com.google.zxing.ReaderException}, let it through. Like the ZXing exceptions it has no stack
+ * trace and a single instance is reused.
+ */
+final class DecodeTimeoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final DecodeTimeoutException INSTANCE = new DecodeTimeoutException();
+
+    private DecodeTimeoutException() {
+        super("Frame decode time budget exceeded");
+    }
+
+    static DecodeTimeoutException getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A coarse copy of another source where every pixel is the average of a factor x factor box of the
+ * original. Built eagerly, one source row at a time, so a cropped source is never copied whole.
+ */
+final class DownsampledLuminanceSource extends LuminanceSource {
+
+    private final byte[] luminances;
+
+    DownsampledLuminanceSource(LuminanceSource source, int factor) {
+        super(source.getWidth() / factor, source.getHeight() / factor);
+        int width = getWidth();
+        int height = getHeight();
+        int area = factor * factor;
+        luminances = new byte[width * height];
+
+        byte[] row = new byte[source.getWidth()];
+        int[] sums = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int dy = 0; dy < factor; dy++) {
+                row = source.getRow(y * factor + dy, row);
+                int sourceX = 0;
+                for (int x = 0; x < width; x++) {
+                    int sum = 0;
+                    for (int dx = 0; dx < factor; dx++) {
+                        sum += row[sourceX++] & 0xff;
+                    }
+                    sums[x] += sum;
+                }
+            }
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                luminances[offset + x] = (byte) (sums[x] / area);
+                sums[x] = 0;
+            }
+        }
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        System.arraycopy(luminances, y * width, row, 0, width);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        return luminances;
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Recognizes frames that look the same as the last frame which failed to decode, such as a phone
+ * lying still pointed at nothing. A frame is reduced to a tiny signature of average luminance over a
+ * coarse grid of cells, and two signatures whose mean difference is within the threshold are taken to
+ * be the same scene. Each duplicate in a row doubles the delay before the next frame should be
+ * requested, until the scene changes or a barcode is found. The signature can't tell a sharp frame
+ * from a blurry one, so once the delay has reached its maximum the next duplicate is decoded anyway,
+ * in case a barcode that was there all along has come into focus.
+ * <p>
+ * Shared by all decode workers, the signature buffer passed in belongs to the caller.
+ * </p>
+ */
+final class DuplicateFrameDetector {
+
+    static final int SIGNATURE_COLUMNS = 16;
+    static final int SIGNATURE_ROWS = 12;
+    static final int SIGNATURE_SIZE = SIGNATURE_COLUMNS * SIGNATURE_ROWS;
+
+    /**
+     * Samples averaged along each edge of a signature cell.
+     */
+    private static final int CELL_SAMPLES = 4;
+
+    /**
+     * Returned by {@link #checkFrame(byte[])} for a frame that differs from the last one that failed.
+     */
+    static final int SCENE_CHANGED = -1;
+
+    private static final int BASE_BACKOFF_MS = 100;
+
+    /**
+     * Doublings of the delay, the longest being {@link #BASE_BACKOFF_MS} times 2 to this power.
+     */
+    private static final int MAX_BACKOFF_DOUBLINGS = 4;
+
+    private final int mThreshold;
+    private final byte[] mLastFailedSignature = new byte[SIGNATURE_SIZE];
+    private boolean mHasLastFailed;
+    private int mDuplicateCount;
+
+    /**
+     * @param threshold Largest mean difference between two signatures, in luminance levels, for them
+     *                  to count as the same scene.
+     */
+    DuplicateFrameDetector(int threshold) {
+        mThreshold = threshold;
+    }
+
+    /**
+     * Reduce the source to its signature.
+     *
+     * @param row       Scratch buffer for a source row, may be null.
+     * @param signature Receives {@link #SIGNATURE_SIZE} bytes.
+     * @return The row buffer, possibly reallocated, for the next call.
+     */
+    static byte[] computeSignature(LuminanceSource source, byte[] row, byte[] signature) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int[] sums = new int[SIGNATURE_COLUMNS];
+        for (int cellY = 0; cellY < SIGNATURE_ROWS; cellY++) {
+            for (int i = 0; i < CELL_SAMPLES; i++) {
+                int y = ((cellY * CELL_SAMPLES + i) * 2 + 1) * height / (SIGNATURE_ROWS * CELL_SAMPLES * 2);
+                row = source.getRow(y, row);
+                for (int cellX = 0; cellX < SIGNATURE_COLUMNS; cellX++) {
+                    for (int j = 0; j < CELL_SAMPLES; j++) {
+                        int x = ((cellX * CELL_SAMPLES + j) * 2 + 1) * width / (SIGNATURE_COLUMNS * CELL_SAMPLES * 2);
+                        sums[cellX] += row[x] & 0xff;
+                    }
+                }
+            }
+            int offset = cellY * SIGNATURE_COLUMNS;
+            for (int cellX = 0; cellX < SIGNATURE_COLUMNS; cellX++) {
+                signature[offset + cellX] = (byte) (sums[cellX] / (CELL_SAMPLES * CELL_SAMPLES));
+                sums[cellX] = 0;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * @return 0 if the frame should be decoded, {@link #SCENE_CHANGED} if it should be decoded and
+     * differs from the last frame that failed, which is then forgotten, otherwise the delay in
+     * milliseconds before requesting the next frame.
+     */
+    synchronized int checkFrame(byte[] signature) {
+        if (!mHasLastFailed) {
+            return 0;
+        }
+        int difference = 0;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            difference += Math.abs((signature[i] & 0xff) - (mLastFailedSignature[i] & 0xff));
+        }
+        if (difference > mThreshold * SIGNATURE_SIZE) {
+            mHasLastFailed = false;
+            mDuplicateCount = 0;
+            return SCENE_CHANGED;
+        }
+        if (mDuplicateCount > MAX_BACKOFF_DOUBLINGS) {
+            // Waited as long as it gets, decode this one for real and start over.
+            mDuplicateCount = 0;
+            return 0;
+        }
+        return BASE_BACKOFF_MS << mDuplicateCount++;
+    }
+
+    synchronized void onFrameFailed(byte[] signature) {
+        System.arraycopy(signature, 0, mLastFailedSignature, 0, SIGNATURE_SIZE);
+        mHasLastFailed = true;
+    }
+
+    synchronized void onFrameDecoded() {
+        mHasLastFailed = false;
+        mDuplicateCount = 0;
+    }
+
+}
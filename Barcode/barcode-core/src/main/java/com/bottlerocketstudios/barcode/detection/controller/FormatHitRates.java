@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.google.zxing.BarcodeFormat;
+
+/**
+ * How often each barcode format has been decoded recently, shared by every decode worker of a session.
+ * Every hit slightly decays all older hits, so the counts follow whatever is being scanned now.
+ */
+final class FormatHitRates {
+
+    /**
+     * Weight kept by older hits each time a barcode is decoded, roughly the last 50 hits count.
+     */
+    private static final float DECAY = 0.98f;
+
+    private final float[] mHits = new float[BarcodeFormat.values().length];
+    private float mTotal;
+
+    synchronized void onDecoded(BarcodeFormat format) {
+        for (int i = 0; i < mHits.length; i++) {
+            mHits[i] *= DECAY;
+        }
+        mHits[format.ordinal()] += 1;
+        mTotal = mTotal * DECAY + 1;
+    }
+
+    /**
+     * Copy the decayed hit count of every format, indexed by ordinal.
+     *
+     * @return The decayed total of all hits.
+     */
+    synchronized float copyHits(float[] hits) {
+        System.arraycopy(mHits, 0, hits, 0, mHits.length);
+        return mTotal;
+    }
+
+}
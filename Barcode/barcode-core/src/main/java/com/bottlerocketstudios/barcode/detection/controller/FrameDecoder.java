@@ -0,0 +1,687 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Decodes a stream of frames, carrying what was learned from one frame over to the next: the region a
+ * barcode was last found in, the formats found recently, whether barcodes are light on dark, the last
+ * frame that failed and the results already reported. This is the whole decode path of a scanner
+ * without any of the camera or threading, so it can be run, tested and profiled on a plain JVM.
+ * <p>
+ * Reuses the same reader objects from one decode to the next, so a decoder must only be used from one
+ * thread at a time. Create one with a {@link FrameDecoderBuilder}.
+ * </p>
+ */
+public final class FrameDecoder {
+
+    /**
+     * A coarse pyramid level is skipped if it would leave fewer pixels than this along either edge.
+     */
+    private static final int MIN_PYRAMID_LEVEL_SIZE = 64;
+
+    /**
+     * Finder points a frame must show, a QR code's three finder patterns, to count as a partial read.
+     */
+    private static final int MIN_PARTIAL_FINDER_POINTS = 3;
+
+    private final Reader reader;
+    private final MultipleBarcodeDecoder mMultipleBarcodeDecoder;
+    private final Reader mTryHarderReader;
+    private final MultipleBarcodeDecoder mTryHarderMultipleBarcodeDecoder;
+    private final RegionTracker mRegionTracker;
+    private final PointCollector mPointCollector;
+    private final DecodeStatistics mDecodeStatistics;
+    private final DecodeMetrics mDecodeMetrics;
+    private final TimedBinarizer.Clock mBinarizationClock = new TimedBinarizer.Clock();
+    private final DecodeDeadline mDeadline = new DecodeDeadline();
+    private final long mFrameTimeBudgetNanos;
+    private long mDecodeNanos;
+    private final BinarizerStrategy mBinarizerStrategy;
+    private final FrameQualityGate mFrameQualityGate;
+    private final DuplicateFrameDetector mDuplicateFrameDetector;
+    private final ResultDeduplicator mResultDeduplicator;
+    private final InversionTracker mInversionTracker;
+    private final TryHarderScheduler mTryHarderScheduler;
+    private final DecodeGovernor mDecodeGovernor;
+    private final byte[] mSignature = new byte[DuplicateFrameDetector.SIGNATURE_SIZE];
+    private byte[] mSignatureRow;
+    private final int mPyramidDownsample;
+    private int mRetryDelay;
+    private boolean mAttempted;
+    private boolean mInverted;
+    private boolean mTryingHarder;
+    private boolean mTimedOut;
+    private int mQuality;
+    private boolean mFound;
+    private boolean mSawPoints;
+    private boolean mDuplicate;
+
+    /**
+     * @param maxResults        Most barcodes looked for in each frame, or 0 to stop at the first one.
+     * @param frameTimeBudgetMs Time after which a frame is abandoned, or 0 to always finish it.
+     */
+    private FrameDecoder(Map<DecodeHintType, ?> baseHints,
+                         DecodeSession decodeSession,
+                         BinarizerStrategy binarizerStrategy,
+                         int pyramidDownsample,
+                         int maxResults,
+                         int multipleResultsTimeBudgetMs,
+                         int frameTimeBudgetMs) {
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        hints.putAll(baseHints);
+        boolean multipleResults = maxResults > 0;
+        // Several barcodes may be anywhere in the frame, so they are always looked for in all of it at
+        // full resolution.
+        mRegionTracker = multipleResults ? null : decodeSession.getRegionTracker();
+        mDecodeStatistics = decodeSession.getDecodeStatistics();
+        mDecodeMetrics = decodeSession.getDecodeMetrics();
+        mFrameQualityGate = decodeSession.getFrameQualityGate();
+        mDuplicateFrameDetector = decodeSession.getDuplicateFrameDetector();
+        mResultDeduplicator = decodeSession.getResultDeduplicator();
+        mInversionTracker = decodeSession.getInversionTracker();
+        // Hints that already try harder leave nothing to escalate to.
+        mTryHarderScheduler = hints.containsKey(DecodeHintType.TRY_HARDER) ? null : decodeSession.getTryHarderScheduler();
+        mDecodeGovernor = decodeSession.getDecodeGovernor();
+        mBinarizerStrategy = binarizerStrategy;
+        mPyramidDownsample = multipleResults ? 1 : pyramidDownsample;
+        mFrameTimeBudgetNanos = Math.max(0, frameTimeBudgetMs) * 1000000L;
+        // Collect the points of partial decodes too, they are as good a hint for the next frame.
+        mPointCollector = new PointCollector((ResultPointCallback) hints.get(DecodeHintType.NEED_RESULT_POINT_CALLBACK), mDeadline);
+        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, mPointCollector);
+        FormatHitRates formatHitRates = decodeSession.getFormatHitRates();
+        reader = createReader(hints, formatHitRates);
+        mMultipleBarcodeDecoder = multipleResults
+                ? createMultipleBarcodeDecoder(reader, hints, maxResults, multipleResultsTimeBudgetMs)
+                : null;
+        if (mTryHarderScheduler != null) {
+            // Built once up front, so escalating a frame is only a matter of picking the other reader.
+            Map<DecodeHintType, Object> tryHarderHints = new EnumMap<DecodeHintType, Object>(hints);
+            tryHarderHints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+            tryHarderHints.remove(DecodeHintType.PURE_BARCODE);
+            mTryHarderReader = createReader(tryHarderHints, formatHitRates);
+            mTryHarderMultipleBarcodeDecoder = multipleResults
+                    ? createMultipleBarcodeDecoder(mTryHarderReader, tryHarderHints, maxResults, multipleResultsTimeBudgetMs)
+                    : null;
+        } else {
+            mTryHarderReader = null;
+            mTryHarderMultipleBarcodeDecoder = null;
+        }
+    }
+
+    private Reader createReader(Map<DecodeHintType, Object> hints, FormatHitRates formatHitRates) {
+        // MultiFormatReader runs all its readers in one go and the Data Matrix and PDF417 detectors never
+        // call back, so only by going one format at a time can the deadline be checked between them and
+        // the 1D readers' points be told apart.
+        return new AdaptiveMultiFormatReader(hints, formatHitRates, mDeadline);
+    }
+
+    private static MultipleBarcodeDecoder createMultipleBarcodeDecoder(Reader reader,
+                                                                       Map<DecodeHintType, Object> hints,
+                                                                       int maxResults,
+                                                                       int timeBudgetMs) {
+        @SuppressWarnings("unchecked")
+        Collection<BarcodeFormat> formats = (Collection<BarcodeFormat>) hints.get(DecodeHintType.POSSIBLE_FORMATS);
+        return new MultipleBarcodeDecoder(reader, hints,
+                formats == null || formats.contains(BarcodeFormat.QR_CODE),
+                maxResults, timeBudgetMs);
+    }
+
+    /**
+     * Decode a frame, skipping it if it is too blurry, too flat or no different from the last frame that
+     * failed, and giving up on it once it is over its time budget. The time spent binarizing and in the
+     * readers and any timeout are added to the {@link DecodeMetrics}.
+     *
+     * @param source The part of the frame to search.
+     * @return The barcodes found that have not been reported recently, a single one unless multiple
+     * results are enabled, or null.
+     */
+    public Result[] decode(LuminanceSource source) {
+        Result[] rawResults = null;
+        mRetryDelay = 0;
+        mBinarizationClock.elapsedNanos = 0;
+        mDecodeNanos = 0;
+        mAttempted = false;
+        mInverted = false;
+        mTryingHarder = false;
+        mTimedOut = false;
+        mQuality = FrameQualityGate.ACCEPTED;
+        mFound = false;
+        mSawPoints = false;
+        mDuplicate = false;
+        if (mFrameTimeBudgetNanos > 0) {
+            mDeadline.start(mFrameTimeBudgetNanos);
+        }
+        if (mDuplicateFrameDetector != null) {
+            mSignatureRow = DuplicateFrameDetector.computeSignature(source, mSignatureRow, mSignature);
+            mRetryDelay = mDuplicateFrameDetector.checkFrame(mSignature);
+            if (mRetryDelay == DuplicateFrameDetector.SCENE_CHANGED) {
+                // The ways the last scene failed say nothing about this one, it gets tried every way.
+                mRetryDelay = 0;
+                if (mTryHarderScheduler != null) {
+                    mTryHarderScheduler.onSceneChanged();
+                }
+                if (mInversionTracker != null) {
+                    mInversionTracker.onSceneChanged();
+                }
+            }
+        }
+        if (mRetryDelay > 0) {
+            // Nothing has changed since the last failure, so don't decode and slow down instead.
+            mDuplicate = true;
+            mDecodeStatistics.onDuplicateFrameSkipped();
+        } else {
+            try {
+                rawResults = decodeFrame(source);
+                if (mAttempted && mDeadline.isPassed()) {
+                    // Finished, but too late to have been worth it, so count it with the abandoned ones.
+                    mTimedOut = true;
+                }
+            } finally {
+                mDeadline.clear();
+            }
+            mFound = rawResults != null;
+            mSawPoints = mAttempted && mPointCollector.getFinderPointCount() >= MIN_PARTIAL_FINDER_POINTS;
+            // A frame that only failed quickly or one way round may still decode trying harder or the
+            // other way, so don't skip its duplicates until those have been tried too.
+            boolean exhausted = true;
+            if (mTryHarderScheduler != null && mAttempted) {
+                exhausted = mTryHarderScheduler.onFrameDecoded(mTryingHarder, rawResults != null);
+                if (mTryingHarder) {
+                    mDecodeStatistics.onTryHarderFrame(rawResults != null);
+                }
+            }
+            if (mInversionTracker != null && mAttempted) {
+                exhausted &= mInversionTracker.onFrameDecoded(mInverted, rawResults != null);
+                if (mInverted && rawResults != null) {
+                    mDecodeStatistics.onInvertedFrameDecoded();
+                }
+            }
+            if (mDuplicateFrameDetector != null) {
+                if (rawResults != null) {
+                    mDuplicateFrameDetector.onFrameDecoded();
+                } else if (exhausted && mAttempted) {
+                    // Frames the quality gate turned away were never decoded, so they prove nothing.
+                    mDuplicateFrameDetector.onFrameFailed(mSignature);
+                }
+            }
+            if (mDecodeGovernor != null && mAttempted) {
+                // A frame the quality gate turned away cost next to nothing, it says nothing about the
+                // cost of decoding and needs no pause after it.
+                mDecodeGovernor.onFrameDecoded(mDecodeNanos, mFound, mSawPoints);
+                if (rawResults == null) {
+                    mRetryDelay = mDecodeGovernor.getFrameDelayMs();
+                }
+            }
+            if (rawResults != null && mResultDeduplicator != null) {
+                rawResults = removeRepeats(rawResults);
+            }
+        }
+        if (mDecodeNanos > 0) {
+            mDecodeMetrics.getBinarization().record(mBinarizationClock.elapsedNanos);
+            mDecodeMetrics.getReaderDecode().record(mDecodeNanos - mBinarizationClock.elapsedNanos);
+        }
+        if (mTimedOut) {
+            mDecodeMetrics.onFrameTimedOut();
+        }
+        mDecodeMetrics.onFrameProcessed(rawResults != null);
+        return rawResults;
+    }
+
+    /**
+     * @return How long to wait in milliseconds before the next frame, if the last one was skipped for
+     * being unchanged since the last failure or failed while decoding is paced down, otherwise 0.
+     */
+    public int getRetryDelay() {
+        return mRetryDelay;
+    }
+
+    /**
+     * @return True if a barcode was found in the last frame, even if it was left out as a repeat.
+     */
+    public boolean isLastFrameDecoded() {
+        return mFound;
+    }
+
+    /**
+     * @return True if the last frame was skipped as a duplicate of the last one that failed.
+     */
+    public boolean isLastFrameDuplicate() {
+        return mDuplicate;
+    }
+
+    /**
+     * @return True if the last frame was skipped as too blurry to decode.
+     */
+    public boolean isLastFrameBlurry() {
+        return mQuality == FrameQualityGate.BLURRY;
+    }
+
+    /**
+     * @return True if the 2D readers saw part of a barcode in the last frame, such as the three finder
+     * patterns of a QR code, but found none. The start guards the 1D readers report turn up in almost
+     * any textured scene, so they don't count.
+     */
+    public boolean isLastFramePartial() {
+        return mSawPoints && !mFound;
+    }
+
+    public DecodeStatistics getDecodeStatistics() {
+        return mDecodeStatistics;
+    }
+
+    public DecodeMetrics getDecodeMetrics() {
+        return mDecodeMetrics;
+    }
+
+    /**
+     * Decode the predicted region of the source, or all of it, if the frame passes the quality gate.
+     *
+     * @return The barcodes found, a single one unless multiple results are enabled, or null.
+     */
+    private Result[] decodeFrame(LuminanceSource source) {
+        if (mMultipleBarcodeDecoder != null) {
+            return decodeMultiple(source);
+        }
+
+        Result rawResult = null;
+        RegionTracker.Region region = null;
+        LuminanceSource decodeSource = source;
+        if (mRegionTracker != null) {
+            region = mRegionTracker.predictRegion(source.getWidth(), source.getHeight());
+            if (region != null) {
+                decodeSource = source.crop(region.left, region.top, region.width, region.height);
+            }
+        }
+
+        int quality = mFrameQualityGate != null
+                ? mFrameQualityGate.evaluate(decodeSource)
+                : FrameQualityGate.ACCEPTED;
+        mQuality = quality;
+        if (quality != FrameQualityGate.ACCEPTED) {
+            // Hopeless, report it as failed straight away so the next frame is requested.
+            mDecodeStatistics.onFrameSkipped(quality);
+        } else {
+            try {
+                rawResult = decodePyramid(beginAttempt(decodeSource),
+                        region != null ? region.left : 0, region != null ? region.top : 0);
+            } catch (DecodeTimeoutException e) {
+                // Abandoned, it counts as a miss like any other frame with nothing found.
+                mTimedOut = true;
+            }
+        }
+
+        if (mRegionTracker != null && quality == FrameQualityGate.ACCEPTED) {
+            if (rawResult != null) {
+                mPointCollector.setPoints(rawResult.getResultPoints());
+            }
+            mRegionTracker.onFrameDecoded(mPointCollector.getXs(), mPointCollector.getYs(),
+                    mPointCollector.getCount(), rawResult != null);
+        }
+        return rawResult != null ? new Result[] {rawResult} : null;
+    }
+
+    private Result[] decodeMultiple(LuminanceSource source) {
+        int quality = mFrameQualityGate != null
+                ? mFrameQualityGate.evaluate(source)
+                : FrameQualityGate.ACCEPTED;
+        mQuality = quality;
+        if (quality != FrameQualityGate.ACCEPTED) {
+            mDecodeStatistics.onFrameSkipped(quality);
+            return null;
+        }
+        source = beginAttempt(source);
+        mPointCollector.begin(1, 0, 0);
+        MultipleBarcodeDecoder multipleBarcodeDecoder = mTryingHarder ? mTryHarderMultipleBarcodeDecoder : mMultipleBarcodeDecoder;
+        long start = System.nanoTime();
+        Binarizer binarizer = createBinarizer(source);
+        Result[] results;
+        try {
+            results = multipleBarcodeDecoder.decode(new BinaryBitmap(new TimedBinarizer(binarizer, mBinarizationClock, mDeadline)));
+        } catch (DecodeTimeoutException e) {
+            // Whatever was found before running out of time goes too, the whole frame is abandoned.
+            mTimedOut = true;
+            results = null;
+        } finally {
+            mDecodeNanos += System.nanoTime() - start;
+        }
+        mBinarizerStrategy.onDecodeAttempted(binarizer, results != null);
+        return results;
+    }
+
+    /**
+     * Called once a frame has passed the quality gate and is about to be decoded. Picks the readers for
+     * the frame.
+     *
+     * @return The source as captured, or an inverted view of it if it is the inverted frame's turn.
+     */
+    private LuminanceSource beginAttempt(LuminanceSource source) {
+        mAttempted = true;
+        mTryingHarder = mTryHarderScheduler != null && mTryHarderScheduler.shouldTryHarder();
+        mInverted = mInversionTracker != null && mInversionTracker.shouldInvert();
+        // Inverts each row as it is read, the frame itself is left alone.
+        return mInverted ? source.invert() : source;
+    }
+
+    /**
+     * @return The results not seen within the repeat window, or null if there are none.
+     */
+    private Result[] removeRepeats(Result[] results) {
+        long now = System.nanoTime() / 1000000L;
+        int kept = 0;
+        for (Result result : results) {
+            if (mResultDeduplicator.isRepeat(result, now)) {
+                // Already reported, still in view.
+                mDecodeStatistics.onRepeatResultSuppressed();
+            } else {
+                results[kept++] = result;
+            }
+        }
+        if (kept == 0) {
+            return null;
+        }
+        if (kept == results.length) {
+            return results;
+        }
+        Result[] remaining = new Result[kept];
+        System.arraycopy(results, 0, remaining, 0, kept);
+        return remaining;
+    }
+
+    /**
+     * Decode the source starting at the coarsest configured pyramid level. A level that fails moves on
+     * to the next finer one, unless the 2D readers found part of a barcode, in which case the barcode is
+     * there but too small for the coarse levels and full resolution is tried straight away. The start
+     * guards the 1D readers report on almost any textured scene don't count.
+     *
+     * @param left Left edge of the source within the whole frame.
+     * @param top  Top edge of the source within the whole frame.
+     * @return The result, with its points relative to the whole frame, or null.
+     */
+    private Result decodePyramid(LuminanceSource source, int left, int top) {
+        int factor = mPyramidDownsample;
+        while (factor > 1 && (source.getWidth() / factor < MIN_PYRAMID_LEVEL_SIZE
+                || source.getHeight() / factor < MIN_PYRAMID_LEVEL_SIZE)) {
+            factor /= 2;
+        }
+
+        while (true) {
+            mPointCollector.begin(factor, left, top);
+            Result result = decodeSource(factor > 1 ? new DownsampledLuminanceSource(source, factor) : source);
+            if (result != null) {
+                mDecodeStatistics.onPyramidLevelDecoded(factor);
+                return transformResult(result, factor, left, top);
+            }
+            if (factor == 1) {
+                return null;
+            }
+            factor = mPointCollector.getFinderPointCount() >= MIN_PARTIAL_FINDER_POINTS ? 1 : factor / 2;
+        }
+    }
+
+    private Result decodeSource(LuminanceSource source) {
+        Reader reader = mTryingHarder ? mTryHarderReader : this.reader;
+        long start = System.nanoTime();
+        Binarizer binarizer = createBinarizer(source);
+        Result result = null;
+        try {
+            result = reader.decode(new BinaryBitmap(new TimedBinarizer(binarizer, mBinarizationClock, mDeadline)));
+        } catch (ReaderException re) {
+            // continue
+        } finally {
+            reader.reset();
+            mDecodeNanos += System.nanoTime() - start;
+        }
+        mBinarizerStrategy.onDecodeAttempted(binarizer, result != null);
+        return result;
+    }
+
+    /**
+     * Create the binarizer for the source, counting whatever the strategy does to pick one as
+     * binarization time.
+     */
+    private Binarizer createBinarizer(LuminanceSource source) {
+        long start = System.nanoTime();
+        Binarizer binarizer = mBinarizerStrategy.createBinarizer(source);
+        mBinarizationClock.elapsedNanos += System.nanoTime() - start;
+        return binarizer;
+    }
+
+    /**
+     * Map the result points of a barcode found in a crop or a downsampled level back onto the whole
+     * frame, so listeners see the same coordinates as for a plain full resolution decode.
+     */
+    private static Result transformResult(Result result, int scale, int left, int top) {
+        ResultPoint[] points = result.getResultPoints();
+        if (points == null || (scale == 1 && left == 0 && top == 0)) {
+            return result;
+        }
+        ResultPoint[] translated = new ResultPoint[points.length];
+        for (int i = 0; i < points.length; i++) {
+            ResultPoint point = points[i];
+            translated[i] = point == null
+                    ? null
+                    : new ResultPoint(point.getX() * scale + left, point.getY() * scale + top);
+        }
+        Result translatedResult = new Result(result.getText(), result.getRawBytes(), translated,
+                result.getBarcodeFormat(), result.getTimestamp());
+        translatedResult.putAllMetadata(result.getResultMetadata());
+        return translatedResult;
+    }
+
+    public static class FrameDecoderBuilder {
+        private Map<DecodeHintType, ?> mHints;
+        private BinarizerStrategy mBinarizerStrategy;
+        private int mPyramidDownsample = 1;
+        private int mRegionTrackingMisses;
+        private boolean mAdaptiveReaderOrder;
+        private int mMinFrameSharpness;
+        private int mMinFrameContrast;
+        private int mDuplicateFrameThreshold;
+        private int mRepeatWindowMs;
+        private int mInvertMisses;
+        private int mTryHarderInterval;
+        private int mTryHarderMisses;
+        private int mDutyCyclePercent;
+        private int mMaxResults;
+        private int mMultipleResultsTimeBudgetMs;
+        private int mFrameTimeBudgetMs;
+        private DecodeSession mDecodeSession;
+
+        /**
+         * Formats, character set and any other hints for the readers, default every format.
+         */
+        public FrameDecoderBuilder hints(Map<DecodeHintType, ?> hints) {
+            mHints = hints;
+            return this;
+        }
+
+        /**
+         * Chooses the binarizer for each decode attempt, default a {@link HybridBinarizerStrategy}.
+         */
+        public FrameDecoderBuilder binarizerStrategy(BinarizerStrategy binarizerStrategy) {
+            mBinarizerStrategy = binarizerStrategy;
+            return this;
+        }
+
+        /**
+         * Try a copy of the frame downsampled by 2 or 4 before full resolution, default 1 for full
+         * resolution only. Other values are rounded down.
+         */
+        public FrameDecoderBuilder pyramidDownsample(int downsample) {
+            mPyramidDownsample = downsample;
+            return this;
+        }
+
+        /**
+         * Search only around where the last barcode was found until this many frames in a row have
+         * failed, default 0 to always search the whole frame.
+         */
+        public FrameDecoderBuilder regionTrackingMisses(int misses) {
+            mRegionTrackingMisses = misses;
+            return this;
+        }
+
+        /**
+         * Try the readers for the formats found recently first, default false.
+         */
+        public FrameDecoderBuilder adaptiveReaderOrder(boolean adaptiveReaderOrder) {
+            mAdaptiveReaderOrder = adaptiveReaderOrder;
+            return this;
+        }
+
+        /**
+         * Skip frames less sharp than this, see {@link FrameQualityGate}, default 0 to decode every frame.
+         */
+        public FrameDecoderBuilder minFrameSharpness(int minSharpness) {
+            mMinFrameSharpness = minSharpness;
+            return this;
+        }
+
+        /**
+         * Skip frames with less contrast than this, see {@link FrameQualityGate}, default 0 to decode
+         * every frame.
+         */
+        public FrameDecoderBuilder minFrameContrast(int minContrast) {
+            mMinFrameContrast = minContrast;
+            return this;
+        }
+
+        /**
+         * Skip frames this similar to the last one that failed, see {@link DuplicateFrameDetector},
+         * default 0 to decode every frame.
+         */
+        public FrameDecoderBuilder duplicateFrameThreshold(int threshold) {
+            mDuplicateFrameThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * Leave out results already returned within this many milliseconds, default 0 to return every
+         * result.
+         */
+        public FrameDecoderBuilder repeatWindowMs(int repeatWindowMs) {
+            mRepeatWindowMs = repeatWindowMs;
+            return this;
+        }
+
+        /**
+         * Decode frames inverted, to find light on dark barcodes, after this many frames in a row have
+         * failed, and normally again after as many inverted frames have failed. 1 alternates every frame
+         * while nothing is found. Default 0 to never invert.
+         */
+        public FrameDecoderBuilder invertMisses(int misses) {
+            mInvertMisses = misses;
+            return this;
+        }
+
+        /**
+         * Decode some frames with {@link DecodeHintType#TRY_HARDER} set and {@link DecodeHintType#PURE_BARCODE}
+         * cleared, using a second set of readers, and the rest with the hints as given. Default 0 for both
+         * to always use the hints as given. Has no effect if the hints already try harder.
+         *
+         * @param interval  Every interval-th frame tries harder.
+         * @param maxMisses The frame after this many quick frames in a row found nothing tries harder.
+         */
+        public FrameDecoderBuilder tryHarder(int interval, int maxMisses) {
+            mTryHarderInterval = interval;
+            mTryHarderMisses = maxMisses;
+            return this;
+        }
+
+        /**
+         * While nothing is being found, ask for a pause after each failed frame, see {@link #getRetryDelay()},
+         * long enough to keep the decoder busy only this share of the time. Default 0 to decode flat out.
+         */
+        public FrameDecoderBuilder targetDutyCyclePercent(int dutyCyclePercent) {
+            mDutyCyclePercent = dutyCyclePercent;
+            return this;
+        }
+
+        /**
+         * Look for up to maxResults barcodes in each frame, spending at most timeBudgetMs on the search
+         * once one has been found. Region tracking and the pyramid are not used.
+         */
+        public FrameDecoderBuilder multipleResults(int maxResults, int timeBudgetMs) {
+            mMaxResults = maxResults;
+            mMultipleResultsTimeBudgetMs = timeBudgetMs;
+            return this;
+        }
+
+        /**
+         * Abandon a frame once it has spent this many milliseconds in the readers, default 0 to always
+         * finish. The readers are stopped the next time they binarize, report a point or move on to the
+         * next format, so a frame may overrun by however long one step of one reader takes.
+         */
+        public FrameDecoderBuilder frameTimeBudgetMs(int timeBudgetMs) {
+            mFrameTimeBudgetMs = timeBudgetMs;
+            return this;
+        }
+
+        /**
+         * Share the state carried from frame to frame with other decoders working on the same frames.
+         * Takes the place of the region tracking, reader order, frame skipping, repeat, inversion, try
+         * harder and duty cycle settings.
+         */
+        FrameDecoderBuilder decodeSession(DecodeSession decodeSession) {
+            mDecodeSession = decodeSession;
+            return this;
+        }
+
+        public FrameDecoder build() {
+            if (mHints == null) {
+                mHints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+            }
+
+            if (mBinarizerStrategy == null) {
+                mBinarizerStrategy = new HybridBinarizerStrategy();
+            }
+
+            if (mDecodeSession == null) {
+                mDecodeSession = new DecodeSession(mRegionTrackingMisses, mAdaptiveReaderOrder,
+                        mMinFrameSharpness, mMinFrameContrast, mDuplicateFrameThreshold, mRepeatWindowMs,
+                        mInvertMisses, mTryHarderInterval, mTryHarderMisses, mDutyCyclePercent,
+                        new DecodeStatistics(), new DecodeMetrics());
+            }
+
+            int pyramidDownsample = 1;
+            if (mPyramidDownsample >= DecodeStatistics.MAX_DOWNSAMPLE_FACTOR) {
+                pyramidDownsample = DecodeStatistics.MAX_DOWNSAMPLE_FACTOR;
+            } else if (mPyramidDownsample >= 2) {
+                pyramidDownsample = 2;
+            }
+
+            return new FrameDecoder(mHints, mDecodeSession, mBinarizerStrategy, pyramidDownsample,
+                    Math.max(0, mMaxResults), mMultipleResultsTimeBudgetMs, mFrameTimeBudgetMs);
+        }
+    }
+
+}
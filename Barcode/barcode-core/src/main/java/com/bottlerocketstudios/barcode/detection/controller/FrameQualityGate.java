@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A cheap look at a frame before it is decoded, to throw away frames that are too blurry or too flat
+ * to hold a readable barcode. Both scores are taken from a coarse grid of samples:
+ * <ul>
+ * <li>Sharpness is the 95th percentile of the luminance difference between neighbouring pixels. Motion
+ * blur and missed focus spread every edge over several pixels, which keeps this low.</li>
+ * <li>Contrast is the spread between the 5th and 95th percentile of luminance.</li>
+ * </ul>
+ * Holds no state between frames, so a single instance may be shared by all decode workers.
+ */
+final class FrameQualityGate {
+
+    static final int ACCEPTED = 0;
+    static final int BLURRY = 1;
+    static final int LOW_CONTRAST = 2;
+
+    /**
+     * Sampled rows and columns along each edge of the frame.
+     */
+    private static final int SAMPLE_GRID = 48;
+
+    private static final int BUCKET_SHIFT = 2;
+    private static final int BUCKETS = 256 >> BUCKET_SHIFT;
+
+    private final int mMinSharpness;
+    private final int mMinContrast;
+
+    /**
+     * @param minSharpness Lowest acceptable sharpness score, 0 to 255, 0 accepts every frame.
+     * @param minContrast  Lowest acceptable contrast score, 0 to 255, 0 accepts every frame.
+     */
+    FrameQualityGate(int minSharpness, int minContrast) {
+        mMinSharpness = minSharpness;
+        mMinContrast = minContrast;
+    }
+
+    /**
+     * @return {@link #ACCEPTED}, {@link #BLURRY} or {@link #LOW_CONTRAST}.
+     */
+    int evaluate(LuminanceSource source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (width < 2 || height < 2) {
+            return ACCEPTED;
+        }
+        int stepX = Math.max(1, width / SAMPLE_GRID);
+        int stepY = Math.max(1, height / SAMPLE_GRID);
+
+        int[] luminanceHistogram = new int[BUCKETS];
+        int[] gradientHistogram = new int[BUCKETS];
+        int sampleCount = 0;
+        byte[] row = new byte[width];
+        byte[] nextRow = new byte[width];
+        for (int y = stepY / 2; y < height - 1; y += stepY) {
+            row = source.getRow(y, row);
+            nextRow = source.getRow(y + 1, nextRow);
+            for (int x = stepX / 2; x < width - 1; x += stepX) {
+                int luminance = row[x] & 0xff;
+                int dx = Math.abs((row[x + 1] & 0xff) - luminance);
+                int dy = Math.abs((nextRow[x] & 0xff) - luminance);
+                luminanceHistogram[luminance >> BUCKET_SHIFT]++;
+                gradientHistogram[Math.max(dx, dy) >> BUCKET_SHIFT]++;
+                sampleCount++;
+            }
+        }
+        if (sampleCount == 0) {
+            return ACCEPTED;
+        }
+
+        int highRank = sampleCount - sampleCount / 20;
+        if (mMinContrast > 0) {
+            int contrast = (percentileBucket(luminanceHistogram, highRank)
+                    - percentileBucket(luminanceHistogram, sampleCount / 20)) << BUCKET_SHIFT;
+            if (contrast < mMinContrast) {
+                return LOW_CONTRAST;
+            }
+        }
+        if (mMinSharpness > 0 && percentileBucket(gradientHistogram, highRank) << BUCKET_SHIFT < mMinSharpness) {
+            return BLURRY;
+        }
+        return ACCEPTED;
+    }
+
+    /**
+     * @return The bucket containing the rank-th smallest sample.
+     */
+    private static int percentileBucket(int[] histogram, int rank) {
+        int seen = 0;
+        for (int bucket = 0; bucket < histogram.length; bucket++) {
+            seen += histogram[bucket];
+            if (seen > rank) {
+                return bucket;
+            }
+        }
+        return histogram.length - 1;
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+/**
+ * Decides whether the next frame is decoded as captured or inverted, so that light on dark barcodes
+ * are found without decoding every frame twice. Frames are decoded one way until a number of them in
+ * a row have failed, then the other way. Whichever way last found a barcode is kept, so a run of
+ * inverted codes costs no more than a run of normal ones. Instances are shared by all decode workers.
+ */
+final class InversionTracker {
+
+    private final int mMaxMisses;
+    private boolean mInverted;
+    private int mMisses;
+    private boolean mNormalMissed;
+    private boolean mInvertedMissed;
+
+    /**
+     * @param maxMisses Consecutive frames without a result before switching, 1 to alternate.
+     */
+    InversionTracker(int maxMisses) {
+        mMaxMisses = maxMisses;
+    }
+
+    /**
+     * @return True if the next frame should be decoded inverted.
+     */
+    synchronized boolean shouldInvert() {
+        return mInverted;
+    }
+
+    /**
+     * Record the outcome of a decoded frame.
+     *
+     * @param inverted True if the frame was decoded inverted.
+     * @param decoded  True if a barcode was found.
+     * @return True if frames have failed both ways since the last barcode was found, so the scene
+     * really holds nothing to decode.
+     */
+    synchronized boolean onFrameDecoded(boolean inverted, boolean decoded) {
+        if (decoded) {
+            mInverted = inverted;
+            mMisses = 0;
+            mNormalMissed = false;
+            mInvertedMissed = false;
+            return false;
+        }
+        if (inverted) {
+            mInvertedMissed = true;
+        } else {
+            mNormalMissed = true;
+        }
+        // Another worker may already have switched while this frame was being decoded.
+        if (inverted == mInverted && ++mMisses >= mMaxMisses) {
+            mInverted = !mInverted;
+            mMisses = 0;
+        }
+        return mNormalMissed && mInvertedMissed;
+    }
+
+    /**
+     * Forget which ways frames have failed, they were of a scene that is gone.
+     */
+    synchronized void onSceneChanged() {
+        mNormalMissed = false;
+        mInvertedMissed = false;
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds several barcodes in one frame. QR codes are located together by a {@link QRCodeMultiReader},
+ * then a {@link GenericMultipleBarcodeReader} repeatedly decodes the areas around what it has found
+ * with the regular reader. Both stop once the result cap or the time budget is reached, whichever
+ * comes first. Used only from the decode thread that owns it.
+ */
+final class MultipleBarcodeDecoder {
+
+    private final Map<DecodeHintType, ?> mHints;
+    private final int mMaxResults;
+    private final long mTimeBudgetNs;
+    private final QRCodeMultiReader mQRCodeMultiReader;
+    private final BudgetedReader mBudgetedReader;
+    private final GenericMultipleBarcodeReader mGenericReader;
+    private final Map<String, Result> mResults = new LinkedHashMap<String, Result>();
+
+    /**
+     * @param reader       Decodes a single barcode with the hints already applied.
+     * @param decodeQr     True if QR codes are among the formats being decoded.
+     * @param maxResults   Most barcodes to report from one frame.
+     * @param timeBudgetMs Time after which no further barcodes are looked for in a frame.
+     */
+    MultipleBarcodeDecoder(Reader reader, Map<DecodeHintType, ?> hints, boolean decodeQr,
+                           int maxResults, long timeBudgetMs) {
+        mHints = hints;
+        mMaxResults = maxResults;
+        mTimeBudgetNs = timeBudgetMs * 1000000L;
+        mQRCodeMultiReader = decodeQr ? new QRCodeMultiReader() : null;
+        mBudgetedReader = new BudgetedReader(reader);
+        mGenericReader = new GenericMultipleBarcodeReader(mBudgetedReader);
+    }
+
+    /**
+     * @return The distinct barcodes found, or null if there were none.
+     */
+    Result[] decode(BinaryBitmap bitmap) {
+        long deadline = System.nanoTime() + mTimeBudgetNs;
+        mResults.clear();
+        mBudgetedReader.begin(deadline);
+        try {
+            if (mQRCodeMultiReader != null) {
+                try {
+                    addResults(mQRCodeMultiReader.decodeMultiple(bitmap, mHints));
+                } catch (NotFoundException e) {
+                    // continue
+                }
+            }
+            if (mResults.size() < mMaxResults && System.nanoTime() < deadline) {
+                try {
+                    addResults(mGenericReader.decodeMultiple(bitmap, mHints));
+                } catch (NotFoundException e) {
+                    // continue
+                }
+            }
+        } finally {
+            if (mQRCodeMultiReader != null) {
+                mQRCodeMultiReader.reset();
+            }
+            mBudgetedReader.reset();
+        }
+        if (mResults.isEmpty()) {
+            return null;
+        }
+        return mResults.values().toArray(new Result[mResults.size()]);
+    }
+
+    private void addResults(Result[] results) {
+        for (Result result : results) {
+            if (mResults.size() >= mMaxResults) {
+                return;
+            }
+            String key = keyOf(result);
+            if (!mResults.containsKey(key)) {
+                mResults.put(key, result);
+            }
+        }
+    }
+
+    private static String keyOf(Result result) {
+        return result.getBarcodeFormat().name() + ':' + result.getText();
+    }
+
+    /**
+     * Refuses to decode anything more once the frame is out of time or has produced enough results,
+     * which is how the otherwise open-ended search of {@link GenericMultipleBarcodeReader} is cut short.
+     */
+    private final class BudgetedReader implements Reader {
+
+        private final Reader mDelegate;
+        /**
+         * Barcodes found this frame but not yet in the results. The generic reader searches crops that
+         * overlap, so it finds the same barcode several times over and only the first counts.
+         */
+        private final Set<String> mNewKeys = new HashSet<String>();
+        private long mDeadline;
+
+        BudgetedReader(Reader delegate) {
+            mDelegate = delegate;
+        }
+
+        void begin(long deadline) {
+            mDeadline = deadline;
+            mNewKeys.clear();
+        }
+
+        @Override
+        public Result decode(BinaryBitmap image) throws NotFoundException {
+            return decode(image, null);
+        }
+
+        @Override
+        public Result decode(BinaryBitmap image, Map<DecodeHintType, ?> hints) throws NotFoundException {
+            // The QR results are already in, the generic reader keeps its own until it returns.
+            if (mResults.size() + mNewKeys.size() >= mMaxResults || System.nanoTime() >= mDeadline) {
+                throw NotFoundException.getNotFoundInstance();
+            }
+            try {
+                Result result = mDelegate.decode(image);
+                String key = keyOf(result);
+                if (!mResults.containsKey(key)) {
+                    mNewKeys.add(key);
+                }
+                return result;
+            } catch (ReaderException re) {
+                throw NotFoundException.getNotFoundInstance();
+            } finally {
+                mDelegate.reset();
+            }
+        }
+
+        @Override
+        public void reset() {
+            mDelegate.reset();
+        }
+    }
+
+}
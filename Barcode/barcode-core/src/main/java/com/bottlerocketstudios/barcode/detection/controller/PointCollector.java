@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+
+/**
+ * Remembers the points reported by the readers while a single frame is decoded, including those of a
+ * decode that ultimately fails, and passes them on to the application's callback. Readers report points
+ * relative to the source they were given, which may be a crop or a downsampled copy, so every point is
+ * mapped back to the whole framing rectangle first. Each point is also a chance to check the frame's
+ * {@link DecodeDeadline}. Used only from the decode thread that owns it.
+ * <p>
+ * The 1D readers report the start guard of anything that looks like one, which almost every textured
+ * scene does, so they are given {@link #getOneDCallback()} and their points are left out of
+ * {@link #getFinderPointCount()}.
+ * </p>
+ */
+final class PointCollector implements ResultPointCallback {
+
+    private static final int MAX_POINTS = 16;
+
+    private final ResultPointCallback mDelegate;
+    private final DecodeDeadline mDeadline;
+    private final float[] mXs = new float[MAX_POINTS];
+    private final float[] mYs = new float[MAX_POINTS];
+    private int mCount;
+    private int mFinderPointCount;
+    private int mScale = 1;
+    private int mLeft;
+    private int mTop;
+
+    PointCollector(ResultPointCallback delegate, DecodeDeadline deadline) {
+        mDelegate = delegate;
+        mDeadline = deadline;
+    }
+
+    private final ResultPointCallback mOneDCallback = new ResultPointCallback() {
+        @Override
+        public void foundPossibleResultPoint(ResultPoint point) {
+            collect(point);
+        }
+    };
+
+    @Override
+    public void foundPossibleResultPoint(ResultPoint point) {
+        if (collect(point)) {
+            mFinderPointCount++;
+        }
+    }
+
+    private boolean collect(ResultPoint point) {
+        mDeadline.check();
+        if (point == null) {
+            return false;
+        }
+        float x = point.getX() * mScale + mLeft;
+        float y = point.getY() * mScale + mTop;
+        if (mCount < MAX_POINTS) {
+            mXs[mCount] = x;
+            mYs[mCount] = y;
+            mCount++;
+        }
+        if (mDelegate != null) {
+            mDelegate.foundPossibleResultPoint(x == point.getX() && y == point.getY() ? point : new ResultPoint(x, y));
+        }
+        return true;
+    }
+
+    /**
+     * Forget the points collected so far and describe how the source of the next decode pass maps to
+     * the framing rectangle.
+     *
+     * @param scale Downsampling factor of the source.
+     * @param left  Left edge of the source within the framing rectangle.
+     * @param top   Top edge of the source within the framing rectangle.
+     */
+    void begin(int scale, int left, int top) {
+        mCount = 0;
+        mFinderPointCount = 0;
+        mScale = scale;
+        mLeft = left;
+        mTop = top;
+    }
+
+    /**
+     * Replace whatever was collected with the final points of a result, which are already relative
+     * to the framing rectangle.
+     */
+    void setPoints(ResultPoint[] points) {
+        mCount = 0;
+        if (points == null) {
+            return;
+        }
+        for (ResultPoint point : points) {
+            if (point != null && mCount < MAX_POINTS) {
+                mXs[mCount] = point.getX();
+                mYs[mCount] = point.getY();
+                mCount++;
+            }
+        }
+    }
+
+    float[] getXs() {
+        return mXs;
+    }
+
+    float[] getYs() {
+        return mYs;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return Points reported by the 2D readers since {@link #begin(int, int, int)}, such as QR code
+     * finder and alignment patterns.
+     */
+    int getFinderPointCount() {
+        return mFinderPointCount;
+    }
+
+    /**
+     * @return The callback for the 1D readers, which collects their points like any other but does
+     * not count them as finder points.
+     */
+    ResultPointCallback getOneDCallback() {
+        return mOneDCallback;
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.Result;
+
+import java.util.Map;
+
+/**
+ * Presents a {@link MultiFormatReader} whose hints were set up front as a plain {@link Reader}.
+ * {@link MultiFormatReader#decode(BinaryBitmap)} would rebuild its readers on every call.
+ */
+final class PresetHintsReader implements Reader {
+
+    private final MultiFormatReader mMultiFormatReader;
+
+    PresetHintsReader(MultiFormatReader multiFormatReader) {
+        mMultiFormatReader = multiFormatReader;
+    }
+
+    @Override
+    public Result decode(BinaryBitmap image) throws NotFoundException {
+        return mMultiFormatReader.decodeWithState(image);
+    }
+
+    @Override
+    public Result decode(BinaryBitmap image, Map<DecodeHintType, ?> hints) throws NotFoundException {
+        return mMultiFormatReader.decodeWithState(image);
+    }
+
+    @Override
+    public void reset() {
+        mMultiFormatReader.reset();
+    }
+
+}
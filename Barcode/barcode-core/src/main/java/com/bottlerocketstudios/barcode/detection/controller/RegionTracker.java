@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+/**
+ * Predicts where in the framing rectangle the next barcode will be, based on the result points found
+ * in previous frames. Decoding only that region means less to binarize and scan. After a number of
+ * consecutive frames without a result the prediction is dropped and the whole framing rectangle is
+ * decoded again.
+ * <p>
+ * All coordinates are relative to the luminance source built for the framing rectangle. Instances
+ * are shared by all decode workers.
+ * </p>
+ */
+final class RegionTracker {
+
+    /**
+     * Each side of the predicted region is pushed out by this fraction of the size of the barcode, to
+     * allow for movement between frames.
+     */
+    private static final float MARGIN_FACTOR = 0.5f;
+
+    /**
+     * Smallest edge of a predicted region, so that a barcode seen almost edge-on still gets some room.
+     */
+    private static final int MIN_REGION_SIZE = 96;
+
+    private final int mMaxMisses;
+    private boolean mHasRegion;
+    private int mLeft;
+    private int mTop;
+    private int mRight;
+    private int mBottom;
+    private int mMisses;
+
+    /**
+     * @param maxMisses Consecutive frames without a result before the whole framing rectangle is used.
+     */
+    RegionTracker(int maxMisses) {
+        mMaxMisses = maxMisses;
+    }
+
+    /**
+     * @return The region to decode, clamped to the source, or null if the whole source should be used.
+     */
+    synchronized Region predictRegion(int sourceWidth, int sourceHeight) {
+        if (!mHasRegion) {
+            return null;
+        }
+        int left = Math.max(0, mLeft);
+        int top = Math.max(0, mTop);
+        int right = Math.min(sourceWidth, mRight);
+        int bottom = Math.min(sourceHeight, mBottom);
+        if (right - left <= 0 || bottom - top <= 0
+                || (left == 0 && top == 0 && right == sourceWidth && bottom == sourceHeight)) {
+            return null;
+        }
+        return new Region(left, top, right - left, bottom - top);
+    }
+
+    /**
+     * Record the outcome of a frame. Points found by a partial decode still move the prediction, but
+     * only a decoded barcode resets the miss count.
+     *
+     * @param xs         X coordinates of the points found, relative to the whole source.
+     * @param ys         Y coordinates of the points found, relative to the whole source.
+     * @param pointCount Number of valid entries in xs and ys.
+     * @param decoded    True if the frame produced a result.
+     */
+    synchronized void onFrameDecoded(float[] xs, float[] ys, int pointCount, boolean decoded) {
+        if (pointCount > 0) {
+            float minX = xs[0];
+            float maxX = xs[0];
+            float minY = ys[0];
+            float maxY = ys[0];
+            for (int i = 1; i < pointCount; i++) {
+                minX = Math.min(minX, xs[i]);
+                maxX = Math.max(maxX, xs[i]);
+                minY = Math.min(minY, ys[i]);
+                maxY = Math.max(maxY, ys[i]);
+            }
+            // Use the larger extent for both axes, a linear barcode only reports points along one row.
+            float extent = Math.max(maxX - minX, maxY - minY);
+            float margin = Math.max(extent * MARGIN_FACTOR, MIN_REGION_SIZE / 2f);
+            mLeft = (int) (minX - margin);
+            mTop = (int) (minY - margin);
+            mRight = (int) (maxX + margin);
+            mBottom = (int) (maxY + margin);
+            mHasRegion = true;
+        }
+
+        if (decoded) {
+            mMisses = 0;
+        } else if (mHasRegion && ++mMisses >= mMaxMisses) {
+            mHasRegion = false;
+            mMisses = 0;
+        }
+    }
+
+    /**
+     * An immutable crop of the framing rectangle.
+     */
+    static final class Region {
+        final int left;
+        final int top;
+        final int width;
+        final int height;
+
+        Region(int left, int top, int width, int height) {
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+}
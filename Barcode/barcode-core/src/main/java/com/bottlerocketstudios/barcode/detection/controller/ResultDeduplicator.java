@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.google.zxing.Result;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Suppresses a barcode that was already decoded within the repeat window, so that continuous scanning
+ * reports an item once while it stays in view. Every sighting restarts the window, the same barcode is
+ * only reported again after it has been out of view for the whole window. Shared by all decode workers.
+ */
+final class ResultDeduplicator {
+
+    private final long mWindowMs;
+    private final Map<String, Long> mLastSeen = new HashMap<String, Long>();
+
+    ResultDeduplicator(long windowMs) {
+        mWindowMs = windowMs;
+    }
+
+    /**
+     * Record a sighting of the result.
+     *
+     * @param nowMs The current time, in milliseconds on a monotonic clock.
+     * @return True if the same text and format was seen within the window and should not be reported.
+     */
+    synchronized boolean isRepeat(Result result, long nowMs) {
+        Iterator<Long> lastSeen = mLastSeen.values().iterator();
+        while (lastSeen.hasNext()) {
+            if (nowMs - lastSeen.next() > mWindowMs) {
+                lastSeen.remove();
+            }
+        }
+        String key = result.getBarcodeFormat().name() + ':' + result.getText();
+        return mLastSeen.put(key, nowMs) != null;
+    }
+
+}
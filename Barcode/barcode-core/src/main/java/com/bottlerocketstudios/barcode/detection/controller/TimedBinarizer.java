@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * Adds the time spent in another binarizer to a {@link Clock}. Readers binarize lazily, row by row or
+ * all at once, in between their own work, so this is the only way to tell the two apart. Binarizers
+ * created for crops of the image share the clock. Every call also checks the frame's
+ * {@link DecodeDeadline}, with the time it has just read anyway.
+ */
+final class TimedBinarizer extends Binarizer {
+
+    private final Binarizer mDelegate;
+    private final Clock mClock;
+    private final DecodeDeadline mDeadline;
+
+    TimedBinarizer(Binarizer delegate, Clock clock, DecodeDeadline deadline) {
+        super(delegate.getLuminanceSource());
+        mDelegate = delegate;
+        mClock = clock;
+        mDeadline = deadline;
+    }
+
+    /**
+     * @return The binarizer doing the actual work.
+     */
+    Binarizer getDelegate() {
+        return mDelegate;
+    }
+
+    @Override
+    public BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
+        long start = System.nanoTime();
+        mDeadline.check(start);
+        try {
+            return mDelegate.getBlackRow(y, row);
+        } finally {
+            mClock.elapsedNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public BitMatrix getBlackMatrix() throws NotFoundException {
+        long start = System.nanoTime();
+        mDeadline.check(start);
+        try {
+            return mDelegate.getBlackMatrix();
+        } finally {
+            mClock.elapsedNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        return new TimedBinarizer(mDelegate.createBinarizer(source), mClock, mDeadline);
+    }
+
+    /**
+     * Accumulated binarization time, used only from the decode thread that owns it.
+     */
+    static final class Clock {
+        long elapsedNanos;
+    }
+
+}
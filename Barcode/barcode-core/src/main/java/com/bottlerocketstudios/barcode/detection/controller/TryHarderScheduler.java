@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+/**
+ * Decides which frames are decoded with {@link com.google.zxing.DecodeHintType#TRY_HARDER}, which finds
+ * more barcodes but takes several times as long. Most frames get the quick readers, every Nth frame
+ * and the frame after a run of misses get the thorough ones. Instances are shared by all decode workers.
+ */
+final class TryHarderScheduler {
+
+    private final int mInterval;
+    private final int mMaxMisses;
+    private long mFrames;
+    private int mMisses;
+    private boolean mHarderMissed;
+
+    /**
+     * @param interval  Try harder on every interval-th frame, or 0 to never do so on a schedule.
+     * @param maxMisses Try harder on the frame after this many quick frames in a row have failed, or 0
+     *                  to never do so because of misses.
+     */
+    TryHarderScheduler(int interval, int maxMisses) {
+        mInterval = interval;
+        mMaxMisses = maxMisses;
+    }
+
+    /**
+     * @return True if the next frame should be decoded trying harder.
+     */
+    synchronized boolean shouldTryHarder() {
+        mFrames++;
+        if (mMaxMisses > 0 && mMisses >= mMaxMisses) {
+            // Start counting again straight away, so that workers decoding at the same time don't all
+            // escalate on the same run of misses.
+            mMisses = 0;
+            return true;
+        }
+        return mInterval > 0 && mFrames % mInterval == 0;
+    }
+
+    /**
+     * Record the outcome of a decoded frame.
+     *
+     * @param triedHarder True if the frame was decoded trying harder.
+     * @param decoded     True if a barcode was found.
+     * @return True if a frame has failed trying harder since the last barcode was found, so the scene
+     * really holds nothing to decode.
+     */
+    synchronized boolean onFrameDecoded(boolean triedHarder, boolean decoded) {
+        if (decoded) {
+            mMisses = 0;
+            mHarderMissed = false;
+            return false;
+        }
+        if (triedHarder) {
+            mHarderMissed = true;
+        } else {
+            mMisses++;
+        }
+        return mHarderMissed;
+    }
+
+    /**
+     * Forget that frames have failed trying harder, they were of a scene that is gone.
+     */
+    synchronized void onSceneChanged() {
+        mHarderMissed = false;
+    }
+
+}
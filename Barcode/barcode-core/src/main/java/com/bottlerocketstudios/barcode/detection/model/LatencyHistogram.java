@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of durations in power of two buckets of microseconds: bucket 0 holds everything under
+ * 2 microseconds and bucket i holds durations from 2^i up to 2^(i+1) microseconds. Recording is lock
+ * free and may happen from any thread. Percentiles are reported as the upper bound of their bucket,
+ * so they are accurate to within a factor of two.
+ */
+public final class LatencyHistogram {
+
+    public static final int BUCKET_COUNT = 32;
+
+    private final AtomicLongArray mBuckets;
+    private final AtomicLong mCount;
+    private final AtomicLong mTotalNanos;
+    private final AtomicLong mMaxNanos;
+
+    public LatencyHistogram() {
+        mBuckets = new AtomicLongArray(BUCKET_COUNT);
+        mCount = new AtomicLong();
+        mTotalNanos = new AtomicLong();
+        mMaxNanos = new AtomicLong();
+    }
+
+    private LatencyHistogram(LatencyHistogram source) {
+        mBuckets = new AtomicLongArray(BUCKET_COUNT);
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, source.mBuckets.get(i));
+        }
+        mCount = new AtomicLong(source.mCount.get());
+        mTotalNanos = new AtomicLong(source.mTotalNanos.get());
+        mMaxNanos = new AtomicLong(source.mMaxNanos.get());
+    }
+
+    /**
+     * @param nanos A duration measured with {@link System#nanoTime()}.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        long micros = nanos / 1000L;
+        int bucket = micros < 2 ? 0 : Math.min(BUCKET_COUNT - 1, 63 - Long.numberOfLeadingZeros(micros));
+        mBuckets.incrementAndGet(bucket);
+        mCount.incrementAndGet();
+        mTotalNanos.addAndGet(nanos);
+        long max = mMaxNanos.get();
+        while (nanos > max && !mMaxNanos.compareAndSet(max, nanos)) {
+            max = mMaxNanos.get();
+        }
+    }
+
+    /**
+     * @return A copy that is no longer updated.
+     */
+    public LatencyHistogram copy() {
+        return new LatencyHistogram(this);
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMeanMicros() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mTotalNanos.get() / count / 1000L;
+    }
+
+    public long getMaxMicros() {
+        return mMaxNanos.get() / 1000L;
+    }
+
+    /**
+     * @param percentile From 0 to 100.
+     * @return The upper bound of the bucket containing the percentile, or 0 if nothing was recorded.
+     */
+    public long getPercentileMicros(double percentile) {
+        long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets.get(i);
+            if (seen >= rank) {
+                return getBucketUpperBoundMicros(i);
+            }
+        }
+        return getBucketUpperBoundMicros(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * @return Number of durations recorded in the bucket.
+     */
+    public long getBucketCount(int bucket) {
+        return mBuckets.get(bucket);
+    }
+
+    /**
+     * @return The exclusive upper bound of the bucket in microseconds.
+     */
+    public static long getBucketUpperBoundMicros(int bucket) {
+        return 2L << bucket;
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + getCount() + " mean=" + getMeanMicros() + "us p50<" + getPercentileMicros(50)
+                + "us p90<" + getPercentileMicros(90) + "us p99<" + getPercentileMicros(99)
+                + "us max=" + getMaxMicros() + "us";
+    }
+
+}
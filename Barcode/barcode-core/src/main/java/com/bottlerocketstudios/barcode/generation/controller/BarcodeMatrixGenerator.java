@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.generation.controller;
+
+import com.bottlerocketstudios.barcode.generation.model.BarcodeRequest;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Encodes a {@link BarcodeRequest} into its modules and renders them as ARGB pixels, ready to be put
+ * into a bitmap or an image on whatever platform is drawing the barcode.
+ */
+public class BarcodeMatrixGenerator {
+
+    /**
+     * @return One bit per pixel of the requested size, set where the barcode is dark.
+     * @throws WriterException If the text can't be encoded in the requested format.
+     */
+    public BitMatrix generate(BarcodeRequest barcodeRequest) throws WriterException {
+        MultiFormatWriter multiFormatWriter = new MultiFormatWriter();
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.CHARACTER_SET, barcodeRequest.getCharacterSet());
+        return multiFormatWriter.encode(
+                barcodeRequest.getBarcodeText(),
+                barcodeRequest.getBarcodeFormat(),
+                barcodeRequest.getWidth(),
+                barcodeRequest.getHeight(),
+                hints);
+    }
+
+    /**
+     * @return The pixels of the matrix row by row, in the request's foreground and background colors.
+     */
+    public int[] render(BitMatrix bitMatrix, BarcodeRequest barcodeRequest) {
+        int foregroundColor = barcodeRequest.getForegroundColor();
+        int backgroundColor = barcodeRequest.getBackgroundColor();
+        int width = bitMatrix.getWidth();
+        int height = bitMatrix.getHeight();
+
+        int pixels[] = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                pixels[offset + x] =  bitMatrix.get(x, y) ? foregroundColor : backgroundColor;
+            }
+        }
+        return pixels;
+    }
+}
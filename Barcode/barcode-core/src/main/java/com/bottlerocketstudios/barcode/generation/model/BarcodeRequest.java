@@ -16,8 +16,6 @@
 
 package com.bottlerocketstudios.barcode.generation.model;
 
-import android.text.TextUtils;
-
 import com.google.zxing.BarcodeFormat;
 
 public class BarcodeRequest {
@@ -140,7 +138,7 @@ public class BarcodeRequest {
 
         public BarcodeRequest build() {
 
-            if (TextUtils.isEmpty(mBarcodeText)) {
+            if (mBarcodeText == null || mBarcodeText.isEmpty()) {
                 throw new IllegalArgumentException("Barcode text cannot be empty");
             }
 
@@ -152,7 +150,7 @@ public class BarcodeRequest {
                 throw new IllegalArgumentException("Width and height must be non-zero positive numbers");
             }
 
-            if (TextUtils.isEmpty(mCharacterSet)) {
+            if (mCharacterSet == null || mCharacterSet.isEmpty()) {
                 mCharacterSet = DEFAULT_CHARACTERSET;
             }
 
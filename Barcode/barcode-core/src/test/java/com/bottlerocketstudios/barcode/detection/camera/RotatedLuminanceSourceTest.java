@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bottlerocketstudios.barcode.detection.camera;
+
+import com.google.zxing.LuminanceSource;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RotatedLuminanceSourceTest {
+
+    private static final int DATA_WIDTH = 7;
+    private static final int DATA_HEIGHT = 5;
+
+    @Test
+    public void matchesReferenceRotation() {
+        byte[] yuvData = createFrame();
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            assertMatches("full frame at " + rotation,
+                    rotate(crop(yuvData, 0, 0, DATA_WIDTH, DATA_HEIGHT), rotation),
+                    new RotatedLuminanceSource(yuvData, DATA_WIDTH, DATA_HEIGHT, 0, 0, DATA_WIDTH, DATA_HEIGHT, rotation));
+            assertMatches("rectangle at " + rotation,
+                    rotate(crop(yuvData, 1, 2, 4, 3), rotation),
+                    new RotatedLuminanceSource(yuvData, DATA_WIDTH, DATA_HEIGHT, 1, 2, 4, 3, rotation));
+        }
+    }
+
+    @Test
+    public void cropsRotatedView() {
+        byte[] yuvData = createFrame();
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            byte[][] upright = rotate(crop(yuvData, 1, 0, 5, 4), rotation);
+            LuminanceSource source = new RotatedLuminanceSource(yuvData, DATA_WIDTH, DATA_HEIGHT, 1, 0, 5, 4, rotation);
+            assertMatches("crop at " + rotation, crop(upright, 1, 1, 2, 3), source.crop(1, 1, 2, 3));
+        }
+    }
+
+    @Test
+    public void rotatesCounterClockwise() {
+        byte[] yuvData = createFrame();
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            byte[][] upright = rotate(crop(yuvData, 2, 1, 4, 3), rotation);
+            LuminanceSource source = new RotatedLuminanceSource(yuvData, DATA_WIDTH, DATA_HEIGHT, 2, 1, 4, 3, rotation);
+            assertMatches("counterclockwise at " + rotation, rotate(upright, 270), source.rotateCounterClockwise());
+        }
+    }
+
+    /**
+     * A frame whose luminance bytes are all different, followed by chroma bytes that must never be read.
+     */
+    private static byte[] createFrame() {
+        byte[] yuvData = new byte[DATA_WIDTH * DATA_HEIGHT * 3 / 2];
+        for (int i = 0; i < yuvData.length; i++) {
+            yuvData[i] = (byte) (i < DATA_WIDTH * DATA_HEIGHT ? i : -1);
+        }
+        return yuvData;
+    }
+
+    private static byte[][] crop(byte[] yuvData, int left, int top, int width, int height) {
+        byte[][] pixels = new byte[height][width];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(yuvData, (top + y) * DATA_WIDTH + left, pixels[y], 0, width);
+        }
+        return pixels;
+    }
+
+    private static byte[][] crop(byte[][] pixels, int left, int top, int width, int height) {
+        byte[][] cropped = new byte[height][width];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(pixels[top + y], left, cropped[y], 0, width);
+        }
+        return cropped;
+    }
+
+    /**
+     * Turns the pixels clockwise a quarter turn at a time.
+     */
+    private static byte[][] rotate(byte[][] pixels, int rotation) {
+        for (int turned = 0; turned < rotation; turned += 90) {
+            int height = pixels.length;
+            int width = pixels[0].length;
+            byte[][] rotated = new byte[width][height];
+            for (int y = 0; y < width; y++) {
+                for (int x = 0; x < height; x++) {
+                    rotated[y][x] = pixels[height - 1 - x][y];
+                }
+            }
+            pixels = rotated;
+        }
+        return pixels;
+    }
+
+    private static void assertMatches(String message, byte[][] expected, LuminanceSource source) {
+        int height = expected.length;
+        int width = expected[0].length;
+        assertEquals(width, source.getWidth());
+        assertEquals(height, source.getHeight());
+        byte[] matrix = source.getMatrix();
+        byte[] row = new byte[width + 1];
+        for (int y = 0; y < height; y++) {
+            byte[] matrixRow = new byte[width];
+            System.arraycopy(matrix, y * width, matrixRow, 0, width);
+            assertArrayEquals(message + " matrix row " + y, expected[y], matrixRow);
+            row = source.getRow(y, row);
+            byte[] copiedRow = new byte[width];
+            System.arraycopy(row, 0, copiedRow, 0, width);
+            assertArrayEquals(message + " row " + y, expected[y], copiedRow);
+        }
+    }
+
+}
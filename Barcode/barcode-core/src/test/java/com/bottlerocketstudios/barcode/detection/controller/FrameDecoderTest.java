@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.bottlerocketstudios.barcode.generation.controller.BarcodeMatrixGenerator;
+import com.bottlerocketstudios.barcode.generation.model.BarcodeRequest;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.RGBLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FrameDecoderTest {
+
+    @Test
+    public void decodesGeneratedBarcodes() throws Exception {
+        FrameDecoder frameDecoder = new FrameDecoder.FrameDecoderBuilder().build();
+        assertDecodes(frameDecoder, BarcodeFormat.QR_CODE, "https://github.com/BottleRocketStudios");
+        assertDecodes(frameDecoder, BarcodeFormat.CODE_128, "BR-1234");
+        assertDecodes(frameDecoder, BarcodeFormat.EAN_13, "5901234123457");
+        assertEquals(3, frameDecoder.getDecodeMetrics().getFramesDecoded());
+    }
+
+    @Test
+    public void decodesDownsampledLevel() throws Exception {
+        FrameDecoder frameDecoder = new FrameDecoder.FrameDecoderBuilder()
+                .pyramidDownsample(4)
+                .build();
+        assertDecodes(frameDecoder, BarcodeFormat.QR_CODE, "pyramid");
+        assertEquals(1, frameDecoder.getDecodeStatistics().getPyramidLevelSuccessCount(4));
+    }
+
+    @Test
+    public void suppressesRepeats() throws Exception {
+        FrameDecoder frameDecoder = new FrameDecoder.FrameDecoderBuilder()
+                .repeatWindowMs(60000)
+                .build();
+        LuminanceSource source = render(BarcodeFormat.QR_CODE, "repeat");
+        assertNotNull(frameDecoder.decode(source));
+        assertNull(frameDecoder.decode(source));
+        assertEquals(1, frameDecoder.getDecodeStatistics().getRepeatResultSuppressedCount());
+    }
+
+    @Test
+    public void decodesLightOnDarkAfterMisses() throws Exception {
+        FrameDecoder frameDecoder = new FrameDecoder.FrameDecoderBuilder()
+                .invertMisses(1)
+                .build();
+        LuminanceSource source = render(BarcodeFormat.QR_CODE, "inverted", 0xffffffff, 0xff000000);
+        assertNull(frameDecoder.decode(source));
+        assertNotNull(frameDecoder.decode(source));
+        // Stays inverted once an inverted barcode has been found.
+        assertNotNull(frameDecoder.decode(source));
+        assertEquals(2, frameDecoder.getDecodeStatistics().getInvertedFrameDecodeCount());
+    }
+
+    @Test
+    public void triesHarderAfterMisses() throws Exception {
+        FrameDecoder frameDecoder = new FrameDecoder.FrameDecoderBuilder()
+                .tryHarder(0, 2)
+                .build();
+        LuminanceSource blank = render(BarcodeFormat.QR_CODE, "blank", 0xffffffff, 0xffffffff);
+        assertNull(frameDecoder.decode(blank));
+        assertNull(frameDecoder.decode(blank));
+        assertEquals(0, frameDecoder.getDecodeStatistics().getTryHarderFrameCount());
+        assertNotNull(frameDecoder.decode(render(BarcodeFormat.QR_CODE, "harder")));
+        assertEquals(1, frameDecoder.getDecodeStatistics().getTryHarderFrameDecodeCount());
+    }
+
+    @Test
+    public void triesHarderBeforeSkippingDuplicates() throws Exception {
+        FrameDecoder frameDecoder = new FrameDecoder.FrameDecoderBuilder()
+                .duplicateFrameThreshold(4)
+                .tryHarder(0, 2)
+                .build();
+        LuminanceSource blank = render(BarcodeFormat.QR_CODE, "blank", 0xffffffff, 0xffffffff);
+        assertNull(frameDecoder.decode(blank));
+        assertNull(frameDecoder.decode(blank));
+        assertEquals(0, frameDecoder.getDecodeStatistics().getDuplicateFrameSkipCount());
+        assertNull(frameDecoder.decode(blank));
+        assertEquals(1, frameDecoder.getDecodeStatistics().getTryHarderFrameCount());
+        assertNull(frameDecoder.decode(blank));
+        assertEquals(1, frameDecoder.getDecodeStatistics().getDuplicateFrameSkipCount());
+        // A different scene is tried harder in turn before its duplicates are skipped.
+        LuminanceSource dark = render(BarcodeFormat.QR_CODE, "dark", 0xff000000, 0xff000000);
+        assertNull(frameDecoder.decode(dark));
+        assertNull(frameDecoder.decode(dark));
+        assertEquals(1, frameDecoder.getDecodeStatistics().getDuplicateFrameSkipCount());
+        assertNull(frameDecoder.decode(dark));
+        assertEquals(2, frameDecoder.getDecodeStatistics().getTryHarderFrameCount());
+        assertNull(frameDecoder.decode(dark));
+        assertEquals(2, frameDecoder.getDecodeStatistics().getDuplicateFrameSkipCount());
+    }
+
+    @Test
+    public void abandonsFramesOverBudget() throws Exception {
+        FrameDecoder frameDecoder = new FrameDecoder.FrameDecoderBuilder()
+                .binarizerStrategy(new BinarizerStrategy() {
+                    @Override
+                    public Binarizer createBinarizer(LuminanceSource source) {
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return new HybridBinarizer(source);
+                    }
+
+                    @Override
+                    public void onDecodeAttempted(Binarizer binarizer, boolean decoded) {
+                    }
+                })
+                .frameTimeBudgetMs(5)
+                .build();
+        assertNull(frameDecoder.decode(render(BarcodeFormat.QR_CODE, "slow")));
+        assertEquals(1, frameDecoder.getDecodeMetrics().getFramesTimedOut());
+        assertEquals(1, frameDecoder.getDecodeMetrics().getFramesProcessed());
+    }
+
+    @Test
+    public void pacesDecodingWhileNothingIsFound() throws Exception {
+        FrameDecoder frameDecoder = new FrameDecoder.FrameDecoderBuilder()
+                .targetDutyCyclePercent(10)
+                .build();
+        LuminanceSource blank = render(BarcodeFormat.QR_CODE, "blank", 0xffffffff, 0xffffffff);
+        assertNull(frameDecoder.decode(blank));
+        assertEquals(0, frameDecoder.getRetryDelay());
+        for (int i = 0; i < 20; i++) {
+            frameDecoder.decode(blank);
+        }
+        assertTrue(frameDecoder.getRetryDelay() > 0);
+        assertNotNull(frameDecoder.decode(render(BarcodeFormat.QR_CODE, "full speed")));
+        assertNull(frameDecoder.decode(blank));
+        assertEquals(0, frameDecoder.getRetryDelay());
+    }
+
+    private static void assertDecodes(FrameDecoder frameDecoder, BarcodeFormat format, String text) throws Exception {
+        Result[] results = frameDecoder.decode(render(format, text));
+        assertNotNull(format + " not decoded", results);
+        assertEquals(1, results.length);
+        assertEquals(format, results[0].getBarcodeFormat());
+        assertEquals(text, results[0].getText());
+    }
+
+    private static LuminanceSource render(BarcodeFormat format, String text) throws Exception {
+        return render(format, text, BarcodeRequest.DEFAULT_FOREGROUND_COLOR, BarcodeRequest.DEFAULT_BACKGROUND_COLOR);
+    }
+
+    private static LuminanceSource render(BarcodeFormat format, String text, int foregroundColor, int backgroundColor) throws Exception {
+        BarcodeRequest barcodeRequest = new BarcodeRequest.BarcodeRequestBuilder()
+                .barcodeText(text)
+                .barcodeFormat(format)
+                .width(640)
+                .height(480)
+                .foregroundColor(foregroundColor)
+                .backgroundColor(backgroundColor)
+                .build();
+        BarcodeMatrixGenerator generator = new BarcodeMatrixGenerator();
+        BitMatrix bitMatrix = generator.generate(barcodeRequest);
+        return new RGBLuminanceSource(bitMatrix.getWidth(), bitMatrix.getHeight(),
+                generator.render(bitMatrix, barcodeRequest));
+    }
+
+}
@@ -18,20 +18,52 @@ package com.bottlerocketstudios.barcode.detection.camera;
 
 import android.content.Context;
 import android.hardware.Camera;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.bottlerocketstudios.barcode.detection.model.ZXingConfiguration;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.concurrent.RejectedExecutionException;
 
+/**
+ * Runs the focus sweeps of cameras in a focus mode that only focuses when asked. A sweep is started
+ * when the preview starts, then on demand as decoded frames are reported through
+ * {@link #onFrameDecoded(boolean, boolean, boolean)}: after a streak of frames too blurry to decode,
+ * or of frames where the readers saw part of a barcode but couldn't read it. While barcodes are being
+ * found the focus is left alone. Failing that, the camera refocuses every
+ * {@link #AUTO_FOCUS_INTERVAL_MS} as before. Everything is scheduled on a handler on the main thread,
+ * nothing sleeps.
+ */
 final class AutoFocusManager implements Camera.AutoFocusCallback {
 
     private static final String TAG = AutoFocusManager.class.getSimpleName();
 
     private static final long AUTO_FOCUS_INTERVAL_MS = 2000L;
+
+    /**
+     * Shortest time between the end of one sweep and an on demand start of the next.
+     */
+    private static final long MIN_AUTO_FOCUS_INTERVAL_MS = 500L;
+
+    /**
+     * Longest a sweep is treated as in progress, in case the driver never reports its end. After that
+     * the sweep counts as over and the next one may start.
+     */
+    private static final long MAX_SWEEP_MS = 1500L;
+
+    /**
+     * Frames in a row too blurry to decode before refocusing.
+     */
+    private static final int BLURRY_FRAMES = 4;
+
+    /**
+     * Frames in a row with part of a barcode but no result before refocusing.
+     */
+    private static final int PARTIAL_FRAMES = 3;
+
     private static final Collection<String> FOCUS_MODES_CALLING_AF;
 
     static {
@@ -42,12 +74,25 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
 
     private boolean stopped;
     private boolean focusing;
+    private boolean focusCompleted;
     private final boolean useAutoFocus;
     private final Camera camera;
-    private AsyncTask<?, ?, ?> outstandingTask;
+    private final Handler handler;
+    private long lastFocusUptimeMs;
+    private long sweepStartUptimeMs;
+    private int blurryFrames;
+    private int partialFrames;
+
+    private final Runnable autoFocus = new Runnable() {
+        @Override
+        public void run() {
+            start();
+        }
+    };
 
     AutoFocusManager(Context context, Camera camera, ZXingConfiguration ZXingConfiguration) {
         this.camera = camera;
+        handler = new Handler(Looper.getMainLooper());
         String currentFocusMode = camera.getParameters().getFocusMode();
         useAutoFocus =
                 ZXingConfiguration.getBoolean(ZXingConfiguration.KEY_AUTO_FOCUS, true)
@@ -59,71 +104,105 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
     @Override
     public synchronized void onAutoFocus(boolean success, Camera theCamera) {
         focusing = false;
-        autoFocusAgainLater();
+        focusCompleted = success;
+        lastFocusUptimeMs = SystemClock.uptimeMillis();
+        blurryFrames = 0;
+        partialFrames = 0;
+        autoFocusAgainLater(AUTO_FOCUS_INTERVAL_MS);
     }
 
-    private synchronized void autoFocusAgainLater() {
-        if (!stopped && outstandingTask == null) {
-            AutoFocusTask newTask = new AutoFocusTask();
-            try {
-                newTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
-                outstandingTask = newTask;
-            } catch (RejectedExecutionException ree) {
-                Log.w(TAG, "Could not request auto focus", ree);
-            }
+    /**
+     * @return True while a focus sweep is in progress and frames are likely to be blurry.
+     */
+    synchronized boolean isFocusing() {
+        return focusing && SystemClock.uptimeMillis() - sweepStartUptimeMs < MAX_SWEEP_MS;
+    }
+
+    /**
+     * @return True the first time this is called after a sweep has brought the scene into focus.
+     */
+    synchronized boolean takeFocusCompleted() {
+        boolean completed = focusCompleted;
+        focusCompleted = false;
+        return completed;
+    }
+
+    /**
+     * Report how a preview frame fared. Called from the decode threads.
+     *
+     * @param decoded True if a barcode was found.
+     * @param blurry  True if the frame was skipped as too blurry to decode.
+     * @param partial True if the readers saw part of a barcode but found none.
+     */
+    synchronized void onFrameDecoded(boolean decoded, boolean blurry, boolean partial) {
+        if (!useAutoFocus || stopped || isFocusing()) {
+            return;
+        }
+        if (decoded) {
+            // The focus is good, push the next sweep back.
+            blurryFrames = 0;
+            partialFrames = 0;
+            autoFocusAgainLater(AUTO_FOCUS_INTERVAL_MS);
+            return;
+        }
+        blurryFrames = blurry ? blurryFrames + 1 : 0;
+        partialFrames = partial ? partialFrames + 1 : 0;
+        if (blurryFrames >= BLURRY_FRAMES || partialFrames >= PARTIAL_FRAMES) {
+            long sinceLastFocusMs = SystemClock.uptimeMillis() - lastFocusUptimeMs;
+            autoFocusAgainLater(Math.max(0L, MIN_AUTO_FOCUS_INTERVAL_MS - sinceLastFocusMs));
+        }
+    }
+
+    /**
+     * Replace any sweep already scheduled with one after delayMs.
+     */
+    private synchronized void autoFocusAgainLater(long delayMs) {
+        handler.removeCallbacks(autoFocus);
+        if (!stopped) {
+            handler.postDelayed(autoFocus, delayMs);
         }
     }
 
     synchronized void start() {
         if (useAutoFocus) {
-            outstandingTask = null;
-            if (!stopped && !focusing) {
+            handler.removeCallbacks(autoFocus);
+            if (!stopped && !isFocusing()) {
+                if (focusing) {
+                    // The driver never reported the end of the last sweep, give up on it.
+                    cancelAutoFocus();
+                    focusing = false;
+                }
                 try {
                     camera.autoFocus(this);
                     focusing = true;
+                    sweepStartUptimeMs = SystemClock.uptimeMillis();
+                    // Replaced by onAutoFocus(), unless the end of this sweep goes unreported too.
+                    autoFocusAgainLater(MAX_SWEEP_MS + AUTO_FOCUS_INTERVAL_MS);
                 } catch (RuntimeException re) {
                     // Have heard RuntimeException reported in Android 4.0.x+; continue?
                     Log.w(TAG, "Unexpected exception while focusing", re);
                     // Try again later to keep cycle going
-                    autoFocusAgainLater();
+                    autoFocusAgainLater(AUTO_FOCUS_INTERVAL_MS);
                 }
             }
         }
     }
 
-    private synchronized void cancelOutstandingTask() {
-        if (outstandingTask != null) {
-            if (outstandingTask.getStatus() != AsyncTask.Status.FINISHED) {
-                outstandingTask.cancel(true);
-            }
-            outstandingTask = null;
-        }
-    }
-
     synchronized void stop() {
         stopped = true;
         if (useAutoFocus) {
-            cancelOutstandingTask();
+            handler.removeCallbacks(autoFocus);
             // Doesn't hurt to call this even if not focusing
-            try {
-                camera.cancelAutoFocus();
-            } catch (RuntimeException re) {
-                // Have heard RuntimeException reported in Android 4.0.x+; continue?
-                Log.w(TAG, "Unexpected exception while cancelling focusing", re);
-            }
+            cancelAutoFocus();
         }
     }
 
-    private final class AutoFocusTask extends AsyncTask<Object, Object, Object> {
-        @Override
-        protected Object doInBackground(Object... voids) {
-            try {
-                Thread.sleep(AUTO_FOCUS_INTERVAL_MS);
-            } catch (InterruptedException e) {
-                // continue
-            }
-            start();
-            return null;
+    private void cancelAutoFocus() {
+        try {
+            camera.cancelAutoFocus();
+        } catch (RuntimeException re) {
+            // Have heard RuntimeException reported in Android 4.0.x+; continue?
+            Log.w(TAG, "Unexpected exception while cancelling focusing", re);
         }
     }
 
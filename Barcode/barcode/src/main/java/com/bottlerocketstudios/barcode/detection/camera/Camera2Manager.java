@@ -0,0 +1,598 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.camera;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.util.Log;
+import android.util.Size;
+import android.view.Display;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.WindowManager;
+
+import com.bottlerocketstudios.barcode.detection.model.LatencyHistogram;
+import com.bottlerocketstudios.barcode.detection.model.ZXingConfiguration;
+import com.google.zxing.LuminanceSource;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Camera backend built on android.hardware.camera2. The display preview is drawn into the supplied
+ * surface while frames for decoding come from a separate YUV_420_888 {@link ImageReader} stream,
+ * which may be configured to a lower resolution than the preview with
+ * {@link ZXingConfiguration#KEY_ANALYSIS_WIDTH} and {@link ZXingConfiguration#KEY_ANALYSIS_HEIGHT}.
+ * Frames are delivered as {@link Image} objects and decoded straight from their Y plane.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public final class Camera2Manager implements CameraBackend {
+
+    private static final String TAG = Camera2Manager.class.getSimpleName();
+
+    private static final long CAMERA_TIMEOUT_MS = 2500L;
+    private static final int DEFAULT_IMAGE_COUNT = 3;
+    private static final int MAX_PREVIEW_PIXELS = 1920 * 1080;
+    private static final float ASPECT_RATIO_TOLERANCE = 0.05f;
+
+    private final Context context;
+    private final android.hardware.camera2.CameraManager systemCameraManager;
+    private final FrameRequestQueue requestQueue = new FrameRequestQueue();
+    private final int maxImages;
+    private HandlerThread cameraThread;
+    private Handler cameraHandler;
+    private CameraDevice cameraDevice;
+    private CameraCharacteristics characteristics;
+    private CameraCaptureSession captureSession;
+    private CaptureRequest.Builder previewRequestBuilder;
+    private Surface previewSurface;
+    private ImageReader imageReader;
+    private ImageReader closingImageReader;
+    private int outstandingImages;
+    private volatile int starvationCount;
+    private Point screenResolution;
+    private Point previewResolution;
+    private Point analysisResolution;
+    private Rect framingRect;
+    private Rect framingRectInPreview;
+    private boolean initialized;
+    private boolean previewing;
+    private boolean torch;
+    private int requestedCameraId = -1;
+    private int requestedFramingRectWidth;
+    private int requestedFramingRectHeight;
+    private ZXingConfiguration mZXingConfiguration;
+
+    public Camera2Manager(Context context, ZXingConfiguration ZXingConfiguration) {
+        this.context = context;
+        mZXingConfiguration = ZXingConfiguration;
+        systemCameraManager = (android.hardware.camera2.CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        // One image is always needed to swap in the latest frame, the rest may be held by the decoder.
+        maxImages = Math.max(DEFAULT_IMAGE_COUNT,
+                ZXingConfiguration.getInt(ZXingConfiguration.KEY_PREVIEW_BUFFER_COUNT, 0)) + 1;
+    }
+
+    @Override
+    public synchronized void openDriver(SurfaceHolder holder) throws IOException {
+        if (cameraDevice == null) {
+            startCameraThread();
+            try {
+                String cameraId = selectCameraId();
+                if (cameraId == null) {
+                    throw new IOException("No camera available");
+                }
+                characteristics = systemCameraManager.getCameraCharacteristics(cameraId);
+                cameraDevice = openCamera(cameraId);
+            } catch (CameraAccessException e) {
+                stopCameraThread();
+                throw new IOException(e);
+            } catch (IOException e) {
+                stopCameraThread();
+                throw e;
+            }
+        }
+
+        if (!initialized) {
+            initialized = true;
+            initResolutions();
+            if (requestedFramingRectWidth > 0 && requestedFramingRectHeight > 0) {
+                setManualFramingRect(requestedFramingRectWidth, requestedFramingRectHeight);
+                requestedFramingRectWidth = 0;
+                requestedFramingRectHeight = 0;
+            }
+        }
+
+        holder.setFixedSize(previewResolution.x, previewResolution.y);
+        createCaptureSession(holder.getSurface());
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return cameraDevice != null;
+    }
+
+    @Override
+    public synchronized void closeDriver() {
+        if (cameraDevice != null) {
+            if (captureSession != null) {
+                captureSession.close();
+                captureSession = null;
+            }
+            cameraDevice.close();
+            cameraDevice = null;
+            closeImageReader();
+            stopCameraThread();
+            previewRequestBuilder = null;
+            previewSurface = null;
+            previewing = false;
+            // Make sure to clear these each time we close the camera, so that any scanning rect
+            // requested by intent is forgotten.
+            framingRect = null;
+            framingRectInPreview = null;
+        }
+    }
+
+    @Override
+    public synchronized void startPreview() {
+        if (captureSession != null && !previewing) {
+            try {
+                previewRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+                previewRequestBuilder.addTarget(previewSurface);
+                previewRequestBuilder.addTarget(imageReader.getSurface());
+                configurePreviewRequest(previewRequestBuilder);
+                torch = FrontLightMode.readPref(mZXingConfiguration) == FrontLightMode.ON;
+                setFlashMode(previewRequestBuilder, torch);
+                captureSession.setRepeatingRequest(previewRequestBuilder.build(), null, cameraHandler);
+                previewing = true;
+            } catch (CameraAccessException e) {
+                Log.w(TAG, "Unable to start preview", e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void stopPreview() {
+        if (captureSession != null && previewing) {
+            try {
+                captureSession.stopRepeating();
+            } catch (CameraAccessException e) {
+                Log.w(TAG, "Unable to stop preview", e);
+            }
+            requestQueue.clear();
+            previewing = false;
+        }
+    }
+
+    @Override
+    public synchronized boolean getTorch() {
+        return torch;
+    }
+
+    @Override
+    public synchronized void setTorch(boolean newSetting) {
+        if (newSetting != torch && previewing) {
+            torch = newSetting;
+            setFlashMode(previewRequestBuilder, newSetting);
+            try {
+                captureSession.setRepeatingRequest(previewRequestBuilder.build(), null, cameraHandler);
+            } catch (CameraAccessException e) {
+                Log.w(TAG, "Unable to change torch", e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean requestPreviewFrame(Handler handler, int message) {
+        if (previewing) {
+            requestQueue.add(handler, message);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized int cancelPreviewFrameRequests() {
+        return requestQueue.clear();
+    }
+
+    /**
+     * Close the image once decoding is done with it so the reader can fill it again.
+     */
+    @Override
+    public synchronized void releasePreviewFrame(Object frame) {
+        ((Image) frame).close();
+        outstandingImages--;
+        if (outstandingImages <= 0 && closingImageReader != null) {
+            closingImageReader.close();
+            closingImageReader = null;
+        }
+    }
+
+    @Override
+    public int getPreviewBufferStarvationCount() {
+        return starvationCount;
+    }
+
+    @Override
+    public void onFrameDecoded(boolean decoded, boolean blurry, boolean partial) {
+        // Focus is left to the camera's own continuous autofocus.
+    }
+
+    @Override
+    public void setFrameWaitHistogram(LatencyHistogram frameWaitHistogram) {
+        requestQueue.setFrameWaitHistogram(frameWaitHistogram);
+    }
+
+    @Override
+    public synchronized Rect getFramingRect() {
+        if (framingRect == null) {
+            if (cameraDevice == null || screenResolution == null) {
+                // Called early, before init even finished
+                return null;
+            }
+            framingRect = FramingRects.calculateFramingRect(screenResolution);
+            Log.d(TAG, "Calculated framing rect: " + framingRect);
+        }
+        return framingRect;
+    }
+
+    /**
+     * Like {@link #getFramingRect} but coordinates are in terms of the analysis stream.
+     */
+    @Override
+    public synchronized Rect getFramingRectInPreview() {
+        if (framingRectInPreview == null) {
+            Rect framingRect = getFramingRect();
+            if (framingRect == null || analysisResolution == null) {
+                return null;
+            }
+            framingRectInPreview = FramingRects.scaleToPreview(framingRect, analysisResolution, screenResolution);
+        }
+        return framingRectInPreview;
+    }
+
+    /**
+     * @param cameraId Index into {@link android.hardware.camera2.CameraManager#getCameraIdList()}.
+     *                 A negative value means "no preference".
+     */
+    @Override
+    public synchronized void setManualCameraId(int cameraId) {
+        requestedCameraId = cameraId;
+    }
+
+    @Override
+    public synchronized void setManualFramingRect(int width, int height) {
+        if (initialized) {
+            framingRect = FramingRects.calculateCenteredRect(screenResolution, width, height);
+            Log.d(TAG, "Calculated manual framing rect: " + framingRect);
+            framingRectInPreview = null;
+        } else {
+            requestedFramingRectWidth = width;
+            requestedFramingRectHeight = height;
+        }
+    }
+
+    @Override
+    public LuminanceSource buildLuminanceSource(Object frame, int width, int height) {
+        Rect rect = getFramingRectInPreview();
+        if (rect == null) {
+            return null;
+        }
+        Image.Plane yPlane = ((Image) frame).getPlanes()[0];
+        return new YPlaneLuminanceSource(yPlane.getBuffer(), yPlane.getRowStride(), width, height,
+                rect.left, rect.top, rect.width(), rect.height());
+    }
+
+    @Override
+    public ZXingConfiguration getZXingConfiguration() {
+        return mZXingConfiguration;
+    }
+
+    private final ImageReader.OnImageAvailableListener mImageAvailableListener = new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            Image image;
+            try {
+                image = reader.acquireLatestImage();
+            } catch (IllegalStateException e) {
+                // Every image is still held by the decoder.
+                starvationCount++;
+                return;
+            }
+            if (image == null) {
+                return;
+            }
+
+            Message message = requestQueue.obtainFrameMessage(image.getWidth(), image.getHeight(), image);
+            if (message != null) {
+                synchronized (Camera2Manager.this) {
+                    outstandingImages++;
+                }
+                message.sendToTarget();
+            } else {
+                image.close();
+            }
+        }
+    };
+
+    private void startCameraThread() {
+        cameraThread = new HandlerThread(TAG);
+        cameraThread.start();
+        cameraHandler = new Handler(cameraThread.getLooper());
+    }
+
+    private void stopCameraThread() {
+        if (cameraThread != null) {
+            cameraThread.quitSafely();
+            cameraThread = null;
+            cameraHandler = null;
+        }
+    }
+
+    /**
+     * Images still held by the decoder would be invalidated by closing the reader, so defer that
+     * until the last of them is released.
+     */
+    private void closeImageReader() {
+        if (imageReader != null) {
+            imageReader.setOnImageAvailableListener(null, null);
+            if (outstandingImages > 0) {
+                closingImageReader = imageReader;
+            } else {
+                imageReader.close();
+            }
+            imageReader = null;
+        }
+    }
+
+    private String selectCameraId() throws CameraAccessException {
+        String[] cameraIds = systemCameraManager.getCameraIdList();
+        if (cameraIds.length == 0) {
+            Log.w(TAG, "No cameras!");
+            return null;
+        }
+
+        if (requestedCameraId >= 0) {
+            if (requestedCameraId < cameraIds.length) {
+                return cameraIds[requestedCameraId];
+            }
+            Log.w(TAG, "Requested camera does not exist: " + requestedCameraId);
+            return null;
+        }
+
+        for (String cameraId : cameraIds) {
+            Integer facing = systemCameraManager.getCameraCharacteristics(cameraId).get(CameraCharacteristics.LENS_FACING);
+            if (facing != null && facing == CameraCharacteristics.LENS_FACING_BACK) {
+                return cameraId;
+            }
+        }
+        Log.i(TAG, "No camera facing back; returning camera " + cameraIds[0]);
+        return cameraIds[0];
+    }
+
+    private CameraDevice openCamera(String cameraId) throws CameraAccessException, IOException {
+        Log.i(TAG, "Opening camera " + cameraId);
+        OpenCallback openCallback = new OpenCallback();
+        systemCameraManager.openCamera(cameraId, openCallback, cameraHandler);
+        CameraDevice camera = openCallback.await();
+        if (camera == null) {
+            throw new IOException("Unable to open camera " + cameraId);
+        }
+        return camera;
+    }
+
+    private void createCaptureSession(Surface surface) throws IOException {
+        if (captureSession != null) {
+            captureSession.close();
+            captureSession = null;
+            previewing = false;
+        }
+        closeImageReader();
+
+        previewSurface = surface;
+        imageReader = ImageReader.newInstance(analysisResolution.x, analysisResolution.y, ImageFormat.YUV_420_888, maxImages);
+        imageReader.setOnImageAvailableListener(mImageAvailableListener, cameraHandler);
+
+        SessionCallback sessionCallback = new SessionCallback();
+        try {
+            cameraDevice.createCaptureSession(Arrays.asList(previewSurface, imageReader.getSurface()), sessionCallback, cameraHandler);
+        } catch (CameraAccessException e) {
+            throw new IOException(e);
+        }
+        captureSession = sessionCallback.await();
+        if (captureSession == null) {
+            throw new IOException("Unable to configure capture session");
+        }
+    }
+
+    private void initResolutions() {
+        WindowManager manager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        Display display = manager.getDefaultDisplay();
+        Point theScreenResolution = new Point();
+        display.getSize(theScreenResolution);
+        screenResolution = theScreenResolution;
+        Log.i(TAG, "Screen resolution: " + screenResolution);
+
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        float screenAspectRatio = (float) screenResolution.x / screenResolution.y;
+        previewResolution = findBestSize(map.getOutputSizes(SurfaceHolder.class), screenAspectRatio,
+                Math.min(screenResolution.x * screenResolution.y, MAX_PREVIEW_PIXELS));
+        Log.i(TAG, "Preview resolution: " + previewResolution);
+
+        // The analysis stream must show the same field of view as the preview for the framing rect to line up.
+        float previewAspectRatio = (float) previewResolution.x / previewResolution.y;
+        int analysisWidth = mZXingConfiguration.getInt(ZXingConfiguration.KEY_ANALYSIS_WIDTH, 0);
+        int analysisHeight = mZXingConfiguration.getInt(ZXingConfiguration.KEY_ANALYSIS_HEIGHT, 0);
+        int analysisPixels = analysisWidth > 0 && analysisHeight > 0 ?
+                analysisWidth * analysisHeight : previewResolution.x * previewResolution.y;
+        analysisResolution = findBestSize(map.getOutputSizes(ImageFormat.YUV_420_888), previewAspectRatio, analysisPixels);
+        Log.i(TAG, "Analysis resolution: " + analysisResolution);
+    }
+
+    /**
+     * Find the size closest in area to the target, preferring sizes with a matching aspect ratio.
+     */
+    private static Point findBestSize(Size[] sizes, float aspectRatio, int targetPixels) {
+        Size best = null;
+        boolean bestMatchesAspect = false;
+        int bestDifference = Integer.MAX_VALUE;
+        for (Size size : sizes) {
+            boolean matchesAspect = Math.abs((float) size.getWidth() / size.getHeight() - aspectRatio) <= ASPECT_RATIO_TOLERANCE;
+            int difference = Math.abs(size.getWidth() * size.getHeight() - targetPixels);
+            if ((matchesAspect && !bestMatchesAspect) || (matchesAspect == bestMatchesAspect && difference < bestDifference)) {
+                best = size;
+                bestMatchesAspect = matchesAspect;
+                bestDifference = difference;
+            }
+        }
+        return new Point(best.getWidth(), best.getHeight());
+    }
+
+    private void configurePreviewRequest(CaptureRequest.Builder builder) {
+        int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+        if (!mZXingConfiguration.getBoolean(ZXingConfiguration.KEY_AUTO_FOCUS, true)) {
+            builder.set(CaptureRequest.CONTROL_AF_MODE, CameraMetadata.CONTROL_AF_MODE_OFF);
+        } else if (contains(afModes, CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE)) {
+            builder.set(CaptureRequest.CONTROL_AF_MODE, CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+        } else if (contains(afModes, CameraMetadata.CONTROL_AF_MODE_AUTO)) {
+            builder.set(CaptureRequest.CONTROL_AF_MODE, CameraMetadata.CONTROL_AF_MODE_AUTO);
+        }
+
+        if (mZXingConfiguration.getBoolean(ZXingConfiguration.KEY_INVERT_SCAN, false)
+                && contains(characteristics.get(CameraCharacteristics.CONTROL_AVAILABLE_EFFECTS), CameraMetadata.CONTROL_EFFECT_MODE_NEGATIVE)) {
+            builder.set(CaptureRequest.CONTROL_EFFECT_MODE, CameraMetadata.CONTROL_EFFECT_MODE_NEGATIVE);
+        }
+
+        if (!mZXingConfiguration.getBoolean(ZXingConfiguration.KEY_DISABLE_BARCODE_SCENE_MODE, true)
+                && contains(characteristics.get(CameraCharacteristics.CONTROL_AVAILABLE_SCENE_MODES), CameraMetadata.CONTROL_SCENE_MODE_BARCODE)) {
+            builder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_USE_SCENE_MODE);
+            builder.set(CaptureRequest.CONTROL_SCENE_MODE, CameraMetadata.CONTROL_SCENE_MODE_BARCODE);
+        }
+    }
+
+    private static void setFlashMode(CaptureRequest.Builder builder, boolean torch) {
+        // Torch only works while auto exposure is not controlling the flash.
+        builder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_ON);
+        builder.set(CaptureRequest.FLASH_MODE, torch ? CameraMetadata.FLASH_MODE_TORCH : CameraMetadata.FLASH_MODE_OFF);
+    }
+
+    private static boolean contains(int[] values, int value) {
+        if (values != null) {
+            for (int candidate : values) {
+                if (candidate == value) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits for the camera device to open. A device which opens after the wait has given up is closed.
+     */
+    private static final class OpenCallback extends CameraDevice.StateCallback {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private CameraDevice camera;
+        private boolean abandoned;
+
+        @Override
+        public synchronized void onOpened(CameraDevice camera) {
+            if (abandoned) {
+                camera.close();
+            } else {
+                this.camera = camera;
+            }
+            latch.countDown();
+        }
+
+        @Override
+        public synchronized void onDisconnected(CameraDevice camera) {
+            Log.w(TAG, "Camera disconnected");
+            camera.close();
+            this.camera = null;
+            latch.countDown();
+        }
+
+        @Override
+        public synchronized void onError(CameraDevice camera, int error) {
+            Log.w(TAG, "Camera error " + error);
+            camera.close();
+            this.camera = null;
+            latch.countDown();
+        }
+
+        CameraDevice await() {
+            try {
+                latch.await(CAMERA_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // continue
+            }
+            synchronized (this) {
+                abandoned = camera == null;
+                return camera;
+            }
+        }
+    }
+
+    /**
+     * Waits for the capture session to be configured.
+     */
+    private static final class SessionCallback extends CameraCaptureSession.StateCallback {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile CameraCaptureSession session;
+
+        @Override
+        public void onConfigured(CameraCaptureSession session) {
+            this.session = session;
+            latch.countDown();
+        }
+
+        @Override
+        public void onConfigureFailed(CameraCaptureSession session) {
+            Log.w(TAG, "Capture session configuration failed");
+            latch.countDown();
+        }
+
+        CameraCaptureSession await() {
+            try {
+                latch.await(CAMERA_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // continue
+            }
+            return session;
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bottlerocketstudios.barcode.detection.camera;
+
+import com.bottlerocketstudios.barcode.detection.model.ZXingConfiguration;
+
+/**
+ * Enumerates the camera APIs which can supply preview frames.
+ */
+public enum CameraApi {
+
+    /**
+     * android.hardware.Camera, available on every supported device.
+     */
+    CAMERA1,
+    /**
+     * android.hardware.camera2, used on Lollipop and newer. Older devices fall back to {@link #CAMERA1}.
+     */
+    CAMERA2;
+
+    private static CameraApi parse(String apiString) {
+        return apiString == null ? CAMERA1 : valueOf(apiString);
+    }
+
+    public static CameraApi readPref(ZXingConfiguration ZXingConfiguration) {
+        return parse(ZXingConfiguration.getString(ZXingConfiguration.KEY_CAMERA_API, CAMERA1.toString()));
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bottlerocketstudios.barcode.detection.camera;
+
+import android.graphics.Rect;
+import android.os.Handler;
+import android.view.SurfaceHolder;
+
+import com.bottlerocketstudios.barcode.detection.model.LatencyHistogram;
+import com.bottlerocketstudios.barcode.detection.model.ZXingConfiguration;
+import com.google.zxing.LuminanceSource;
+
+import java.io.IOException;
+
+/**
+ * The camera as seen by the scanning pipeline. Implementations own the camera device, draw the
+ * preview into the supplied surface and deliver preview frames on request.
+ * <p>
+ * Frames are opaque to the rest of the pipeline. They are delivered in message.obj, turned into a
+ * {@link LuminanceSource} with {@link #buildLuminanceSource(Object, int, int)} and must be handed
+ * back with {@link #releasePreviewFrame(Object)} once decoding is finished with them.
+ * </p>
+ */
+public interface CameraBackend {
+
+    /**
+     * Opens the camera driver and initializes the hardware parameters.
+     *
+     * @param holder The surface object which the camera will draw preview frames into.
+     * @throws java.io.IOException Indicates the camera driver failed to open.
+     */
+    void openDriver(SurfaceHolder holder) throws IOException;
+
+    boolean isOpen();
+
+    /**
+     * Closes the camera driver if still in use.
+     */
+    void closeDriver();
+
+    /**
+     * Asks the camera hardware to begin drawing preview frames to the screen.
+     */
+    void startPreview();
+
+    /**
+     * Tells the camera to stop drawing preview frames.
+     */
+    void stopPreview();
+
+    boolean getTorch();
+
+    void setTorch(boolean newSetting);
+
+    /**
+     * A single preview frame will be returned to the handler supplied, in the message.obj field with
+     * width and height encoded as message.arg1 and message.arg2, respectively. Calling this again
+     * before the frame arrives requests an additional frame rather than replacing the first request.
+     *
+     * @param handler The handler to send the message to.
+     * @param message The what field of the message to be sent.
+     * @return true if the request was accepted, false if the camera is not previewing.
+     */
+    boolean requestPreviewFrame(Handler handler, int message);
+
+    /**
+     * Cancel all frames requested with {@link #requestPreviewFrame(Handler, int)} that have not been
+     * delivered yet.
+     *
+     * @return The number of requests that were cancelled.
+     */
+    int cancelPreviewFrameRequests();
+
+    /**
+     * Return a frame delivered by {@link #requestPreviewFrame(Handler, int)} once nothing refers to it.
+     */
+    void releasePreviewFrame(Object frame);
+
+    /**
+     * @return Number of times the camera had no free buffer for a new frame because all of them were
+     * still held by the decoder.
+     */
+    int getPreviewBufferStarvationCount();
+
+    /**
+     * Report how a delivered frame fared, so the camera can refocus when frames come out blurry or a
+     * barcode is seen but can't be read, and leave the focus alone while barcodes are being found.
+     * Called from the decode threads.
+     *
+     * @param decoded True if a barcode was found.
+     * @param blurry  True if the frame was skipped as too blurry to decode.
+     * @param partial True if the readers saw part of a barcode but found none.
+     */
+    void onFrameDecoded(boolean decoded, boolean blurry, boolean partial);
+
+    /**
+     * @param frameWaitHistogram Receives the time from each frame being requested with
+     *                           {@link #requestPreviewFrame(Handler, int)} to it being delivered.
+     */
+    void setFrameWaitHistogram(LatencyHistogram frameWaitHistogram);
+
+    /**
+     * Calculates the framing rect which the UI should draw to show the user where to place the
+     * barcode.
+     *
+     * @return The rectangle to draw on screen in window coordinates.
+     */
+    Rect getFramingRect();
+
+    /**
+     * Like {@link #getFramingRect} but coordinates are in terms of the frames delivered by
+     * {@link #requestPreviewFrame(Handler, int)}, not UI / screen.
+     */
+    Rect getFramingRectInPreview();
+
+    /**
+     * @param cameraId camera ID of the camera to use. A negative value means "no preference".
+     */
+    void setManualCameraId(int cameraId);
+
+    /**
+     * @param width  The width in pixels to scan.
+     * @param height The height in pixels to scan.
+     */
+    void setManualFramingRect(int width, int height);
+
+    /**
+     * Build a luminance source covering the framing rect of a delivered frame.
+     *
+     * @return The luminance source or null if the framing rect is not known yet.
+     */
+    LuminanceSource buildLuminanceSource(Object frame, int width, int height);
+
+    ZXingConfiguration getZXingConfiguration();
+
+}
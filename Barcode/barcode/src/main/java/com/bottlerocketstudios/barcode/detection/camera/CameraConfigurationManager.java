@@ -21,6 +21,7 @@ import android.graphics.Point;
 import android.hardware.Camera;
 import android.util.Log;
 import android.view.Display;
+import android.view.Surface;
 import android.view.WindowManager;
 
 import com.bottlerocketstudios.barcode.detection.model.ZXingConfiguration;
@@ -37,6 +38,8 @@ final class CameraConfigurationManager {
     private final Context context;
     private Point screenResolution;
     private Point cameraResolution;
+    private int frameRotation;
+    private int displayOrientation;
     private ZXingConfiguration mZXingConfiguration;
 
     CameraConfigurationManager(Context context, ZXingConfiguration ZXingConfiguration) {
@@ -46,8 +49,10 @@ final class CameraConfigurationManager {
 
     /**
      * Reads, one time, values from the camera that are needed by the app.
+     *
+     * @param cameraId The ID the camera was opened with, or -1 if unknown.
      */
-    void initFromCameraParameters(Camera camera) {
+    void initFromCameraParameters(Camera camera, int cameraId) {
         Camera.Parameters parameters = camera.getParameters();
         WindowManager manager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
         Display display = manager.getDefaultDisplay();
@@ -55,10 +60,52 @@ final class CameraConfigurationManager {
         display.getSize(theScreenResolution);
         screenResolution = theScreenResolution;
         Log.i(TAG, "Screen resolution: " + screenResolution);
-        cameraResolution = CameraConfigurationUtils.findBestPreviewSizeValue(parameters, screenResolution);
+        initRotation(cameraId, display);
+        // Preview sizes are listed landscape, so match them against the screen turned the same way.
+        Point rotatedScreenResolution = frameRotation == 90 || frameRotation == 270
+                ? new Point(screenResolution.y, screenResolution.x)
+                : screenResolution;
+        cameraResolution = CameraConfigurationUtils.findBestPreviewSizeValue(parameters, rotatedScreenResolution);
         Log.i(TAG, "Camera resolution: " + cameraResolution);
     }
 
+    private void initRotation(int cameraId, Display display) {
+        Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
+        boolean front = false;
+        int sensorOrientation = 90;
+        if (cameraId >= 0) {
+            Camera.getCameraInfo(cameraId, cameraInfo);
+            front = cameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_FRONT;
+            sensorOrientation = cameraInfo.orientation;
+        }
+
+        int rotation = mZXingConfiguration.getInt(ZXingConfiguration.KEY_FRAME_ROTATION, -1);
+        if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+            int displayDegrees;
+            switch (display.getRotation()) {
+                case Surface.ROTATION_90:
+                    displayDegrees = 90;
+                    break;
+                case Surface.ROTATION_180:
+                    displayDegrees = 180;
+                    break;
+                case Surface.ROTATION_270:
+                    displayDegrees = 270;
+                    break;
+                default:
+                    displayDegrees = 0;
+                    break;
+            }
+            // The front camera's preview is mirrored, so it turns the other way.
+            rotation = front
+                    ? (sensorOrientation + displayDegrees) % 360
+                    : (sensorOrientation - displayDegrees + 360) % 360;
+        }
+        frameRotation = rotation;
+        displayOrientation = front ? (360 - rotation) % 360 : rotation;
+        Log.i(TAG, "Frame rotation: " + frameRotation);
+    }
+
     void setDesiredCameraParameters(Camera camera, boolean safeMode) {
         Camera.Parameters parameters = camera.getParameters();
 
@@ -99,6 +146,7 @@ final class CameraConfigurationManager {
         }
 
         parameters.setPreviewSize(cameraResolution.x, cameraResolution.y);
+        camera.setDisplayOrientation(displayOrientation);
 
         Log.i(TAG, "Final camera parameters: " + parameters.flatten());
 
@@ -122,6 +170,13 @@ final class CameraConfigurationManager {
         return screenResolution;
     }
 
+    /**
+     * @return Degrees clockwise preview frames are turned to match the screen.
+     */
+    int getFrameRotation() {
+        return frameRotation;
+    }
+
     boolean getTorchState(Camera camera) {
         if (camera != null) {
             Camera.Parameters parameters = camera.getParameters();
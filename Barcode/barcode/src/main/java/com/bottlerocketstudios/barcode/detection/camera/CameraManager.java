@@ -17,6 +17,7 @@
 package com.bottlerocketstudios.barcode.detection.camera;
 
 import android.content.Context;
+import android.graphics.ImageFormat;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.hardware.Camera;
@@ -25,9 +26,12 @@ import android.util.Log;
 import android.view.SurfaceHolder;
 
 import com.bottlerocketstudios.barcode.detection.camera.open.OpenCameraInterface;
+import com.bottlerocketstudios.barcode.detection.model.LatencyHistogram;
 import com.bottlerocketstudios.barcode.detection.model.ZXingConfiguration;
+import com.google.zxing.LuminanceSource;
 import com.google.zxing.PlanarYUVLuminanceSource;
 
+import java.io.File;
 import java.io.IOException;
 
 /**
@@ -37,15 +41,10 @@ import java.io.IOException;
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
-public final class CameraManager {
+public final class CameraManager implements CameraBackend {
 
     private static final String TAG = CameraManager.class.getSimpleName();
 
-    private static final int MIN_FRAME_WIDTH = 240;
-    private static final int MIN_FRAME_HEIGHT = 240;
-    private static final int MAX_FRAME_WIDTH = 1200; // = 5/8 * 1920
-    private static final int MAX_FRAME_HEIGHT = 675; // = 5/8 * 1080
-
     private final Context context;
     private final CameraConfigurationManager configManager;
     private Camera camera;
@@ -55,6 +54,7 @@ public final class CameraManager {
     private boolean initialized;
     private boolean previewing;
     private int requestedCameraId = -1;
+    private int cameraId = -1;
     private int requestedFramingRectWidth;
     private int requestedFramingRectHeight;
     private ZXingConfiguration mZXingConfiguration;
@@ -65,11 +65,23 @@ public final class CameraManager {
      */
     private final PreviewCallback previewCallback;
 
+    /**
+     * Preallocated preview buffers when buffered capture is enabled, null for one-shot callbacks.
+     */
+    private final PreviewBufferPool previewBufferPool;
+
+    /**
+     * Tees preview frames into a file while previewing, if a recording path is configured.
+     */
+    private FrameRecorder frameRecorder;
+
     public CameraManager(Context context, ZXingConfiguration ZXingConfiguration) {
         mZXingConfiguration = ZXingConfiguration;
         this.context = context;
         this.configManager = new CameraConfigurationManager(context, ZXingConfiguration);
-        previewCallback = new PreviewCallback(configManager);
+        int previewBufferCount = ZXingConfiguration.getInt(ZXingConfiguration.KEY_PREVIEW_BUFFER_COUNT, 0);
+        previewBufferPool = previewBufferCount > 0 ? new PreviewBufferPool(previewBufferCount) : null;
+        previewCallback = new PreviewCallback(configManager, previewBufferPool);
     }
 
     /**
@@ -78,10 +90,12 @@ public final class CameraManager {
      * @param holder The surface object which the camera will draw preview frames into.
      * @throws java.io.IOException Indicates the camera driver failed to open.
      */
+    @Override
     public synchronized void openDriver(SurfaceHolder holder) throws IOException {
         Camera theCamera = camera;
         if (theCamera == null) {
 
+            cameraId = OpenCameraInterface.findCameraId(requestedCameraId);
             if (requestedCameraId >= 0) {
                 theCamera = OpenCameraInterface.open(requestedCameraId);
             } else {
@@ -97,7 +111,7 @@ public final class CameraManager {
 
         if (!initialized) {
             initialized = true;
-            configManager.initFromCameraParameters(theCamera);
+            configManager.initFromCameraParameters(theCamera, cameraId);
             if (requestedFramingRectWidth > 0 && requestedFramingRectHeight > 0) {
                 setManualFramingRect(requestedFramingRectWidth, requestedFramingRectHeight);
                 requestedFramingRectWidth = 0;
@@ -129,6 +143,7 @@ public final class CameraManager {
 
     }
 
+    @Override
     public synchronized boolean isOpen() {
         return camera != null;
     }
@@ -136,6 +151,7 @@ public final class CameraManager {
     /**
      * Closes the camera driver if still in use.
      */
+    @Override
     public synchronized void closeDriver() {
         if (camera != null) {
             camera.release();
@@ -150,34 +166,76 @@ public final class CameraManager {
     /**
      * Asks the camera hardware to begin drawing preview frames to the screen.
      */
+    @Override
     public synchronized void startPreview() {
         Camera theCamera = camera;
         if (theCamera != null && !previewing) {
+            if (previewBufferPool != null) {
+                previewBufferPool.allocate(theCamera, getPreviewBufferSize(theCamera));
+                theCamera.setPreviewCallbackWithBuffer(previewCallback);
+            }
+            startRecording();
             theCamera.startPreview();
             previewing = true;
             autoFocusManager = new AutoFocusManager(context, camera, mZXingConfiguration);
+            if (mZXingConfiguration.getBoolean(ZXingConfiguration.KEY_SKIP_FRAMES_WHILE_FOCUSING, false)) {
+                previewCallback.setAutoFocusManager(autoFocusManager);
+            }
         }
     }
 
     /**
      * Tells the camera to stop drawing preview frames.
      */
+    @Override
     public synchronized void stopPreview() {
         if (autoFocusManager != null) {
+            previewCallback.setAutoFocusManager(null);
             autoFocusManager.stop();
             autoFocusManager = null;
         }
         if (camera != null && previewing) {
+            if (previewBufferPool != null) {
+                camera.setPreviewCallbackWithBuffer(null);
+                previewBufferPool.clear();
+            }
             camera.stopPreview();
-            previewCallback.setHandler(null, 0);
+            previewCallback.clearRequests();
+            stopRecording();
             previewing = false;
         }
     }
 
+    private void startRecording() {
+        String path = mZXingConfiguration.getString(ZXingConfiguration.KEY_FRAME_RECORDING_PATH, null);
+        if (path != null) {
+            try {
+                frameRecorder = new FrameRecorder(new File(path));
+                previewCallback.setFrameRecorder(frameRecorder);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to record frames to " + path, e);
+            }
+        }
+    }
+
+    private void stopRecording() {
+        if (frameRecorder != null) {
+            previewCallback.setFrameRecorder(null);
+            try {
+                frameRecorder.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to finish frame recording", e);
+            }
+            frameRecorder = null;
+        }
+    }
+
+    @Override
     public boolean getTorch() {
         return configManager.getTorchState(camera);
     }
 
+    @Override
     public synchronized void setTorch(boolean newSetting) {
         if (newSetting != configManager.getTorchState(camera)) {
             if (camera != null) {
@@ -189,17 +247,79 @@ public final class CameraManager {
     /**
      * A single preview frame will be returned to the handler supplied. The data will arrive as byte[]
      * in the message.obj field, with width and height encoded as message.arg1 and message.arg2,
-     * respectively.
+     * respectively. Once the receiver is done with the data it should hand it back with
+     * {@link #releasePreviewFrame(Object)}. Calling this again before the frame arrives requests an
+     * additional frame rather than replacing the first request.
      *
      * @param handler The handler to send the message to.
      * @param message The what field of the message to be sent.
+     * @return true if the request was accepted, false if the camera is not previewing.
      */
-    public synchronized void requestPreviewFrame(Handler handler, int message) {
+    @Override
+    public synchronized boolean requestPreviewFrame(Handler handler, int message) {
         Camera theCamera = camera;
         if (theCamera != null && previewing) {
-            previewCallback.setHandler(handler, message);
-            theCamera.setOneShotPreviewCallback(previewCallback);
+            previewCallback.addRequest(handler, message);
+            if (previewBufferPool == null) {
+                theCamera.setOneShotPreviewCallback(previewCallback);
+            }
+            return true;
         }
+        return false;
+    }
+
+    /**
+     * Cancel all frames requested with {@link #requestPreviewFrame(Handler, int)} that have not been
+     * delivered yet.
+     *
+     * @return The number of requests that were cancelled.
+     */
+    @Override
+    public synchronized int cancelPreviewFrameRequests() {
+        return previewCallback.clearRequests();
+    }
+
+    /**
+     * Return a frame delivered by {@link #requestPreviewFrame(Handler, int)} so that its buffer can
+     * be filled again. Does nothing unless buffered capture is enabled.
+     *
+     * @param frame The preview frame that is no longer in use.
+     */
+    @Override
+    public synchronized void releasePreviewFrame(Object frame) {
+        if (previewBufferPool != null && camera != null) {
+            previewBufferPool.recycle(camera, (byte[]) frame);
+        }
+    }
+
+    /**
+     * @return Number of times the camera has run out of preview buffers because all of them were
+     * still held by the decoder. Always 0 unless buffered capture is enabled.
+     */
+    @Override
+    public int getPreviewBufferStarvationCount() {
+        return previewBufferPool == null ? 0 : previewBufferPool.getStarvationCount();
+    }
+
+    /**
+     * Passed on to the focus sweeps, which only run on demand in the auto and macro focus modes.
+     */
+    @Override
+    public synchronized void onFrameDecoded(boolean decoded, boolean blurry, boolean partial) {
+        if (autoFocusManager != null) {
+            autoFocusManager.onFrameDecoded(decoded, blurry, partial);
+        }
+    }
+
+    @Override
+    public void setFrameWaitHistogram(LatencyHistogram frameWaitHistogram) {
+        previewCallback.setFrameWaitHistogram(frameWaitHistogram);
+    }
+
+    private int getPreviewBufferSize(Camera theCamera) {
+        Point cameraResolution = configManager.getCameraResolution();
+        int bitsPerPixel = ImageFormat.getBitsPerPixel(theCamera.getParameters().getPreviewFormat());
+        return cameraResolution.x * cameraResolution.y * bitsPerPixel / 8;
     }
 
     /**
@@ -209,6 +329,7 @@ public final class CameraManager {
      *
      * @return The rectangle to draw on screen in window coordinates.
      */
+    @Override
     public synchronized Rect getFramingRect() {
         if (framingRect == null) {
             if (camera == null) {
@@ -220,52 +341,33 @@ public final class CameraManager {
                 return null;
             }
 
-            int width = findDesiredDimensionInRange(screenResolution.x, MIN_FRAME_WIDTH, MAX_FRAME_WIDTH);
-            int height = findDesiredDimensionInRange(screenResolution.y, MIN_FRAME_HEIGHT, MAX_FRAME_HEIGHT);
-
-            int leftOffset = (screenResolution.x - width) / 2;
-            int topOffset = (screenResolution.y - height) / 2;
-            framingRect = new Rect(leftOffset, topOffset, leftOffset + width, topOffset + height);
+            framingRect = FramingRects.calculateFramingRect(screenResolution);
             Log.d(TAG, "Calculated framing rect: " + framingRect);
         }
         return framingRect;
     }
 
-    private static int findDesiredDimensionInRange(int resolution, int hardMin, int hardMax) {
-        int dim = 5 * resolution / 8; // Target 5/8 of each dimension
-        if (dim < hardMin) {
-            return hardMin;
-        }
-        if (dim > hardMax) {
-            return hardMax;
-        }
-        return dim;
-    }
-
     /**
      * Like {@link #getFramingRect} but coordinates are in terms of the preview frame,
      * not UI / screen.
      *
      * @return {@link android.graphics.Rect} expressing barcode scan area in terms of the preview size
      */
+    @Override
     public synchronized Rect getFramingRectInPreview() {
         if (framingRectInPreview == null) {
             Rect framingRect = getFramingRect();
             if (framingRect == null) {
                 return null;
             }
-            Rect rect = new Rect(framingRect);
             Point cameraResolution = configManager.getCameraResolution();
             Point screenResolution = configManager.getScreenResolution();
             if (cameraResolution == null || screenResolution == null) {
                 // Called early, before init even finished
                 return null;
             }
-            rect.left = rect.left * cameraResolution.x / screenResolution.x;
-            rect.right = rect.right * cameraResolution.x / screenResolution.x;
-            rect.top = rect.top * cameraResolution.y / screenResolution.y;
-            rect.bottom = rect.bottom * cameraResolution.y / screenResolution.y;
-            framingRectInPreview = rect;
+            framingRectInPreview = FramingRects.scaleToPreview(framingRect, cameraResolution, screenResolution,
+                    configManager.getFrameRotation());
         }
         return framingRectInPreview;
     }
@@ -277,6 +379,7 @@ public final class CameraManager {
      *
      * @param cameraId camera ID of the camera to use. A negative value means "no preference".
      */
+    @Override
     public synchronized void setManualCameraId(int cameraId) {
         requestedCameraId = cameraId;
     }
@@ -288,18 +391,10 @@ public final class CameraManager {
      * @param width  The width in pixels to scan.
      * @param height The height in pixels to scan.
      */
+    @Override
     public synchronized void setManualFramingRect(int width, int height) {
         if (initialized) {
-            Point screenResolution = configManager.getScreenResolution();
-            if (width > screenResolution.x) {
-                width = screenResolution.x;
-            }
-            if (height > screenResolution.y) {
-                height = screenResolution.y;
-            }
-            int leftOffset = (screenResolution.x - width) / 2;
-            int topOffset = (screenResolution.y - height) / 2;
-            framingRect = new Rect(leftOffset, topOffset, leftOffset + width, topOffset + height);
+            framingRect = FramingRects.calculateCenteredRect(configManager.getScreenResolution(), width, height);
             Log.d(TAG, "Calculated manual framing rect: " + framingRect);
             framingRectInPreview = null;
         } else {
@@ -315,18 +410,31 @@ public final class CameraManager {
      * @param data   A preview frame.
      * @param width  The width of the image.
      * @param height The height of the image.
-     * @return A PlanarYUVLuminanceSource instance.
+     * @return A PlanarYUVLuminanceSource instance, or a RotatedLuminanceSource if the frame is turned to
+     * match the screen.
      */
-    public PlanarYUVLuminanceSource buildLuminanceSource(byte[] data, int width, int height) {
+    public LuminanceSource buildLuminanceSource(byte[] data, int width, int height) {
         Rect rect = getFramingRectInPreview();
         if (rect == null) {
             return null;
         }
+        int rotation = configManager.getFrameRotation();
+        if (rotation != 0) {
+            // Read the frame upright in place, so barcodes come out the way round they are on screen.
+            return new RotatedLuminanceSource(data, width, height, rect.left, rect.top,
+                    rect.width(), rect.height(), rotation);
+        }
         // Go ahead and assume it's YUV rather than die.
         return new PlanarYUVLuminanceSource(data, width, height, rect.left, rect.top,
                 rect.width(), rect.height(), false);
     }
 
+    @Override
+    public LuminanceSource buildLuminanceSource(Object frame, int width, int height) {
+        return buildLuminanceSource((byte[]) frame, width, height);
+    }
+
+    @Override
     public ZXingConfiguration getZXingConfiguration() {
         return mZXingConfiguration;
     }
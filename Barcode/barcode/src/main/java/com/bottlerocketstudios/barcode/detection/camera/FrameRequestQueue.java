@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bottlerocketstudios.barcode.detection.camera;
+
+import android.os.Handler;
+import android.os.Message;
+
+import com.bottlerocketstudios.barcode.detection.model.LatencyHistogram;
+
+/**
+ * Tracks how many preview frames have been requested and where they should be delivered. Requests
+ * accumulate so that several frames may be outstanding at once; each delivered frame satisfies one,
+ * oldest first, which is also how the time spent waiting for a frame is measured.
+ */
+final class FrameRequestQueue {
+
+    private Handler previewHandler;
+    private int previewMessage;
+    private int pendingFrames;
+    private long[] requestNanos = new long[4];
+    private int oldestRequest;
+    private LatencyHistogram frameWaitHistogram;
+
+    synchronized void setFrameWaitHistogram(LatencyHistogram frameWaitHistogram) {
+        this.frameWaitHistogram = frameWaitHistogram;
+    }
+
+    synchronized void add(Handler previewHandler, int previewMessage) {
+        this.previewHandler = previewHandler;
+        this.previewMessage = previewMessage;
+        if (pendingFrames == requestNanos.length) {
+            long[] grown = new long[requestNanos.length * 2];
+            for (int i = 0; i < pendingFrames; i++) {
+                grown[i] = requestNanos[(oldestRequest + i) % requestNanos.length];
+            }
+            requestNanos = grown;
+            oldestRequest = 0;
+        }
+        requestNanos[(oldestRequest + pendingFrames) % requestNanos.length] = System.nanoTime();
+        pendingFrames++;
+    }
+
+    /**
+     * Drop all outstanding requests.
+     *
+     * @return The number of requests which will no longer be delivered.
+     */
+    synchronized int clear() {
+        int cancelled = pendingFrames;
+        pendingFrames = 0;
+        oldestRequest = 0;
+        previewHandler = null;
+        return cancelled;
+    }
+
+    synchronized boolean hasPending() {
+        return pendingFrames > 0 && previewHandler != null;
+    }
+
+    /**
+     * Satisfy one request with the given frame.
+     *
+     * @return The message to send, with width and height in arg1 and arg2 and the frame in obj, or
+     * null if no frame is wanted right now.
+     */
+    synchronized Message obtainFrameMessage(int width, int height, Object frame) {
+        if (!hasPending()) {
+            return null;
+        }
+        if (frameWaitHistogram != null) {
+            frameWaitHistogram.record(System.nanoTime() - requestNanos[oldestRequest]);
+        }
+        oldestRequest = (oldestRequest + 1) % requestNanos.length;
+        pendingFrames--;
+        return previewHandler.obtainMessage(previewMessage, width, height, frame);
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bottlerocketstudios.barcode.detection.camera;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+
+/**
+ * Framing rectangle math shared by the camera backends.
+ */
+final class FramingRects {
+
+    private static final int MIN_FRAME_WIDTH = 240;
+    private static final int MIN_FRAME_HEIGHT = 240;
+    private static final int MAX_FRAME_WIDTH = 1200; // = 5/8 * 1920
+    private static final int MAX_FRAME_HEIGHT = 675; // = 5/8 * 1080
+
+    private FramingRects() {
+    }
+
+    /**
+     * Target 5/8 of each screen dimension, centered, within sensible limits.
+     */
+    static Rect calculateFramingRect(Point screenResolution) {
+        int width = findDesiredDimensionInRange(screenResolution.x, MIN_FRAME_WIDTH, MAX_FRAME_WIDTH);
+        int height = findDesiredDimensionInRange(screenResolution.y, MIN_FRAME_HEIGHT, MAX_FRAME_HEIGHT);
+        return calculateCenteredRect(screenResolution, width, height);
+    }
+
+    /**
+     * Center a rectangle of the requested size on the screen, clipped to the screen.
+     */
+    static Rect calculateCenteredRect(Point screenResolution, int width, int height) {
+        if (width > screenResolution.x) {
+            width = screenResolution.x;
+        }
+        if (height > screenResolution.y) {
+            height = screenResolution.y;
+        }
+        int leftOffset = (screenResolution.x - width) / 2;
+        int topOffset = (screenResolution.y - height) / 2;
+        return new Rect(leftOffset, topOffset, leftOffset + width, topOffset + height);
+    }
+
+    /**
+     * Convert a rectangle in screen coordinates to the coordinates of a preview frame.
+     */
+    static Rect scaleToPreview(Rect framingRect, Point cameraResolution, Point screenResolution) {
+        Rect rect = new Rect(framingRect);
+        rect.left = rect.left * cameraResolution.x / screenResolution.x;
+        rect.right = rect.right * cameraResolution.x / screenResolution.x;
+        rect.top = rect.top * cameraResolution.y / screenResolution.y;
+        rect.bottom = rect.bottom * cameraResolution.y / screenResolution.y;
+        return rect;
+    }
+
+    /**
+     * Convert a rectangle in screen coordinates to the coordinates of a preview frame that is turned
+     * clockwise by rotation degrees to be shown on the screen.
+     */
+    static Rect scaleToPreview(Rect framingRect, Point cameraResolution, Point screenResolution, int rotation) {
+        if (rotation == 0) {
+            return scaleToPreview(framingRect, cameraResolution, screenResolution);
+        }
+        boolean sideways = rotation == 90 || rotation == 270;
+        Point uprightResolution = sideways
+                ? new Point(cameraResolution.y, cameraResolution.x)
+                : cameraResolution;
+        Rect upright = scaleToPreview(framingRect, uprightResolution, screenResolution);
+        // Turn the rectangle back by the rotation, into the axes of the frame as captured.
+        switch (rotation) {
+            case 90:
+                return new Rect(upright.top, cameraResolution.y - upright.right,
+                        upright.bottom, cameraResolution.y - upright.left);
+            case 180:
+                return new Rect(cameraResolution.x - upright.right, cameraResolution.y - upright.bottom,
+                        cameraResolution.x - upright.left, cameraResolution.y - upright.top);
+            default:
+                return new Rect(cameraResolution.x - upright.bottom, upright.left,
+                        cameraResolution.x - upright.top, upright.right);
+        }
+    }
+
+    private static int findDesiredDimensionInRange(int resolution, int hardMin, int hardMax) {
+        int dim = 5 * resolution / 8; // Target 5/8 of each dimension
+        if (dim < hardMin) {
+            return hardMin;
+        }
+        if (dim > hardMax) {
+            return hardMax;
+        }
+        return dim;
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.camera;
+
+import android.hardware.Camera;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A fixed set of preview buffers which are queued with the camera via
+ * {@link Camera#addCallbackBuffer(byte[])} and handed back to it once the decoder is finished with
+ * them. This keeps the camera from allocating a new frame for every preview callback.
+ */
+final class PreviewBufferPool {
+
+    private static final String TAG = PreviewBufferPool.class.getSimpleName();
+
+    private final int bufferCount;
+    /**
+     * The buffers of the current preview, by identity. Decoders may still hold buffers of an earlier
+     * one, which are the same size but must not be queued again on top of these.
+     */
+    private final Set<byte[]> buffers = Collections.newSetFromMap(new IdentityHashMap<byte[], Boolean>());
+    private int queuedBuffers;
+    private int starvationCount;
+
+    PreviewBufferPool(int bufferCount) {
+        this.bufferCount = bufferCount;
+    }
+
+    /**
+     * Allocate the buffers for the current preview size and queue all of them with the camera.
+     */
+    synchronized void allocate(Camera camera, int size) {
+        buffers.clear();
+        queuedBuffers = 0;
+        for (int i = 0; i < bufferCount; i++) {
+            byte[] buffer = new byte[size];
+            buffers.add(buffer);
+            camera.addCallbackBuffer(buffer);
+            queuedBuffers++;
+        }
+        Log.i(TAG, "Allocated " + bufferCount + " preview buffers of " + size + " bytes");
+    }
+
+    /**
+     * The camera has filled one of the queued buffers. If that was the last one, the camera will
+     * drop frames until a buffer is returned, which is counted as a starvation event.
+     */
+    synchronized void onBufferFilled() {
+        queuedBuffers--;
+        if (queuedBuffers <= 0) {
+            queuedBuffers = 0;
+            starvationCount++;
+        }
+    }
+
+    /**
+     * Return a buffer to the camera. Frames which were not allocated for the current preview, whether
+     * they come from elsewhere or from before the preview was last stopped, are ignored.
+     */
+    synchronized void recycle(Camera camera, byte[] data) {
+        if (data == null || !buffers.contains(data)) {
+            return;
+        }
+        camera.addCallbackBuffer(data);
+        queuedBuffers++;
+    }
+
+    /**
+     * Forget about all outstanding buffers, typically because the preview has stopped.
+     */
+    synchronized void clear() {
+        buffers.clear();
+        queuedBuffers = 0;
+    }
+
+    synchronized int getStarvationCount() {
+        return starvationCount;
+    }
+
+}
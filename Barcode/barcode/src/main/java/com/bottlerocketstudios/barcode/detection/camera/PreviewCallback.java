@@ -22,32 +22,105 @@ import android.os.Handler;
 import android.os.Message;
 import android.util.Log;
 
+import com.bottlerocketstudios.barcode.detection.model.LatencyHistogram;
+
+import java.io.IOException;
+
 final class PreviewCallback implements Camera.PreviewCallback {
 
     private static final String TAG = PreviewCallback.class.getSimpleName();
 
     private final CameraConfigurationManager configManager;
-    private Handler previewHandler;
-    private int previewMessage;
+    private final PreviewBufferPool bufferPool;
+    private final FrameRequestQueue requestQueue = new FrameRequestQueue();
+    private volatile FrameRecorder frameRecorder;
+    private volatile AutoFocusManager autoFocusManager;
 
-    PreviewCallback(CameraConfigurationManager configManager) {
+    PreviewCallback(CameraConfigurationManager configManager, PreviewBufferPool bufferPool) {
         this.configManager = configManager;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Ask for one more frame to be delivered to the handler.
+     */
+    void addRequest(Handler previewHandler, int previewMessage) {
+        requestQueue.add(previewHandler, previewMessage);
     }
 
-    void setHandler(Handler previewHandler, int previewMessage) {
-        this.previewHandler = previewHandler;
-        this.previewMessage = previewMessage;
+    /**
+     * Drop all outstanding requests.
+     *
+     * @return The number of requests which will no longer be delivered.
+     */
+    int clearRequests() {
+        return requestQueue.clear();
+    }
+
+    void setFrameWaitHistogram(LatencyHistogram frameWaitHistogram) {
+        requestQueue.setFrameWaitHistogram(frameWaitHistogram);
+    }
+
+    /**
+     * @param frameRecorder Receives a copy of every frame the camera delivers, or null to stop recording.
+     */
+    void setFrameRecorder(FrameRecorder frameRecorder) {
+        this.frameRecorder = frameRecorder;
+    }
+
+    /**
+     * @param autoFocusManager Frames captured during its focus sweeps are held back and the first one
+     *                         after a sweep succeeds is decoded ahead of the rest, or null to deliver
+     *                         every frame in order.
+     */
+    void setAutoFocusManager(AutoFocusManager autoFocusManager) {
+        this.autoFocusManager = autoFocusManager;
     }
 
     @Override
     public void onPreviewFrame(byte[] data, Camera camera) {
+        if (bufferPool != null) {
+            bufferPool.onBufferFilled();
+        }
         Point cameraResolution = configManager.getCameraResolution();
-        Handler thePreviewHandler = previewHandler;
-        if (cameraResolution != null && thePreviewHandler != null) {
-            Message message = thePreviewHandler.obtainMessage(previewMessage, cameraResolution.x,
-                    cameraResolution.y, data);
-            message.sendToTarget();
-            previewHandler = null;
+        // Set from the main thread, read once so a recording stopped meanwhile is not used twice.
+        FrameRecorder recorder = frameRecorder;
+        if (recorder != null && cameraResolution != null) {
+            try {
+                recorder.record(data, cameraResolution.x, cameraResolution.y, System.nanoTime());
+            } catch (IOException e) {
+                Log.w(TAG, "Frame recording stopped", e);
+                if (frameRecorder == recorder) {
+                    frameRecorder = null;
+                }
+            }
+        }
+        AutoFocusManager focusManager = autoFocusManager;
+        if (focusManager != null && focusManager.isFocusing()) {
+            // The lens is still moving, keep the request for a frame that has a chance of decoding.
+            if (bufferPool != null) {
+                bufferPool.recycle(camera, data);
+            } else if (requestQueue.hasPending()) {
+                camera.setOneShotPreviewCallback(this);
+            }
+            return;
+        }
+        Message message = cameraResolution == null ? null
+                : requestQueue.obtainFrameMessage(cameraResolution.x, cameraResolution.y, data);
+        if (message != null) {
+            if (focusManager != null && focusManager.takeFocusCompleted()) {
+                // Freshly focused, decode this one before any older frames still queued.
+                message.getTarget().sendMessageAtFrontOfQueue(message);
+            } else {
+                message.sendToTarget();
+            }
+            if (bufferPool == null && requestQueue.hasPending()) {
+                // One-shot callbacks must be re-armed for every frame still wanted.
+                camera.setOneShotPreviewCallback(this);
+            }
+        } else if (bufferPool != null) {
+            // Buffered callbacks keep arriving whether or not a frame was requested, hand it right back.
+            bufferPool.recycle(camera, data);
         } else {
             Log.d(TAG, "Got preview callback, but no handler or resolution available");
         }
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.camera;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.SurfaceHolder;
+
+import com.bottlerocketstudios.barcode.detection.model.LatencyHistogram;
+import com.bottlerocketstudios.barcode.detection.model.ZXingConfiguration;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Delivers the frames of a {@link FrameRecording} in place of a camera, so that a scan session can be
+ * reproduced exactly. Nothing is drawn to the preview surface and the frame doubles as the screen when
+ * working out the framing rectangle.
+ * <p>
+ * At recorded speed a request is answered with the latest frame that is due by then, or the next one
+ * when it is not due yet, so frames go by while the decoder is busy just as they do with a camera.
+ * Pauses of more than a second, as between two recorded preview sessions, are shortened to one
+ * second. Otherwise every frame is delivered, in order, as soon as it is requested. Delivery ends with
+ * the last frame of the recording.
+ * </p>
+ */
+public final class ReplayCameraBackend implements CameraBackend {
+
+    private static final String TAG = ReplayCameraBackend.class.getSimpleName();
+
+    private static final long MAX_REPLAY_GAP_MS = 1000L;
+
+    private final ZXingConfiguration mZXingConfiguration;
+    private final boolean realtime;
+    private final FrameRequestQueue requestQueue = new FrameRequestQueue();
+    private FrameRecording recording;
+    private long[] replayOffsetsMs;
+    private HandlerThread replayThread;
+    private Handler replayHandler;
+    private long replayStartUptimeMs;
+    private int nextFrame;
+    private Rect framingRect;
+    private int requestedFramingRectWidth;
+    private int requestedFramingRectHeight;
+
+    private final Runnable deliverFrames = new Runnable() {
+        @Override
+        public void run() {
+            deliverFrames();
+        }
+    };
+
+    public ReplayCameraBackend(ZXingConfiguration ZXingConfiguration) {
+        mZXingConfiguration = ZXingConfiguration;
+        realtime = ZXingConfiguration.getBoolean(ZXingConfiguration.KEY_FRAME_REPLAY_REALTIME, true);
+    }
+
+    /**
+     * Opens the recording named by {@link ZXingConfiguration#KEY_FRAME_REPLAY_PATH}.
+     *
+     * @param holder Ignored, nothing is drawn.
+     */
+    @Override
+    public synchronized void openDriver(SurfaceHolder holder) throws IOException {
+        if (recording != null) {
+            return;
+        }
+        String path = mZXingConfiguration.getString(ZXingConfiguration.KEY_FRAME_REPLAY_PATH, null);
+        if (path == null) {
+            throw new IOException("No frame recording to replay");
+        }
+        FrameRecording theRecording = new FrameRecording(new File(path));
+        if (theRecording.getFrameCount() == 0) {
+            theRecording.close();
+            throw new IOException("No frames recorded in " + path);
+        }
+        replayOffsetsMs = new long[theRecording.getFrameCount()];
+        for (int i = 1; i < replayOffsetsMs.length; i++) {
+            long gapMs = (theRecording.getTimestampNanos(i) - theRecording.getTimestampNanos(i - 1)) / 1000000L;
+            replayOffsetsMs[i] = replayOffsetsMs[i - 1] + Math.max(0, Math.min(MAX_REPLAY_GAP_MS, gapMs));
+        }
+        recording = theRecording;
+        nextFrame = 0;
+        Log.i(TAG, "Replaying " + theRecording.getFrameCount() + " frames from " + path);
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return recording != null;
+    }
+
+    @Override
+    public synchronized void closeDriver() {
+        stopPreview();
+        if (recording != null) {
+            try {
+                recording.close();
+            } catch (IOException e) {
+                Log.w(TAG, e);
+            }
+            recording = null;
+            framingRect = null;
+        }
+    }
+
+    @Override
+    public synchronized void startPreview() {
+        if (recording != null && replayThread == null) {
+            replayThread = new HandlerThread("FrameReplay");
+            replayThread.start();
+            replayHandler = new Handler(replayThread.getLooper());
+            // Time carries on from where the last preview stopped.
+            replayStartUptimeMs = SystemClock.uptimeMillis() - replayOffsetsMs[Math.min(nextFrame, replayOffsetsMs.length - 1)];
+        }
+    }
+
+    @Override
+    public synchronized void stopPreview() {
+        if (replayThread != null) {
+            requestQueue.clear();
+            replayThread.quit();
+            replayThread = null;
+            replayHandler = null;
+        }
+    }
+
+    @Override
+    public boolean getTorch() {
+        return false;
+    }
+
+    @Override
+    public void setTorch(boolean newSetting) {
+        // No light to switch.
+    }
+
+    @Override
+    public synchronized boolean requestPreviewFrame(Handler handler, int message) {
+        if (replayHandler == null) {
+            return false;
+        }
+        requestQueue.add(handler, message);
+        replayHandler.post(deliverFrames);
+        return true;
+    }
+
+    @Override
+    public int cancelPreviewFrameRequests() {
+        return requestQueue.clear();
+    }
+
+    @Override
+    public void releasePreviewFrame(Object frame) {
+        // Every frame is a fresh copy, there is nothing to recycle.
+    }
+
+    @Override
+    public int getPreviewBufferStarvationCount() {
+        return 0;
+    }
+
+    @Override
+    public void onFrameDecoded(boolean decoded, boolean blurry, boolean partial) {
+        // Recorded frames are already focused however they were.
+    }
+
+    @Override
+    public void setFrameWaitHistogram(LatencyHistogram frameWaitHistogram) {
+        requestQueue.setFrameWaitHistogram(frameWaitHistogram);
+    }
+
+    /**
+     * Runs on the replay thread whenever there may be a frame to deliver.
+     */
+    private synchronized void deliverFrames() {
+        while (recording != null && replayHandler != null && requestQueue.hasPending()) {
+            if (nextFrame >= recording.getFrameCount()) {
+                Log.i(TAG, "End of frame recording");
+                return;
+            }
+            int frame = nextFrame;
+            if (realtime) {
+                long elapsedMs = SystemClock.uptimeMillis() - replayStartUptimeMs;
+                if (replayOffsetsMs[frame] > elapsedMs) {
+                    replayHandler.removeCallbacks(deliverFrames);
+                    replayHandler.postAtTime(deliverFrames, replayStartUptimeMs + replayOffsetsMs[frame]);
+                    return;
+                }
+                // The camera would have captured these while nobody was asking.
+                while (frame + 1 < replayOffsetsMs.length && replayOffsetsMs[frame + 1] <= elapsedMs) {
+                    frame++;
+                }
+            }
+            nextFrame = frame + 1;
+            byte[] data;
+            try {
+                data = recording.readFrame(frame);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to read recorded frame " + frame, e);
+                continue;
+            }
+            Message message = requestQueue.obtainFrameMessage(recording.getWidth(frame), recording.getHeight(frame), data);
+            if (message != null) {
+                message.sendToTarget();
+            }
+        }
+    }
+
+    @Override
+    public synchronized Rect getFramingRect() {
+        if (framingRect == null) {
+            if (recording == null) {
+                return null;
+            }
+            Point frameResolution = new Point(recording.getWidth(0), recording.getHeight(0));
+            if (requestedFramingRectWidth > 0 && requestedFramingRectHeight > 0) {
+                framingRect = FramingRects.calculateCenteredRect(frameResolution,
+                        requestedFramingRectWidth, requestedFramingRectHeight);
+            } else {
+                framingRect = FramingRects.calculateFramingRect(frameResolution);
+            }
+            Log.d(TAG, "Calculated framing rect: " + framingRect);
+        }
+        return framingRect;
+    }
+
+    /**
+     * The frame is the screen, so this is the same as {@link #getFramingRect()}.
+     */
+    @Override
+    public Rect getFramingRectInPreview() {
+        return getFramingRect();
+    }
+
+    @Override
+    public void setManualCameraId(int cameraId) {
+        // There is only the recording.
+    }
+
+    @Override
+    public synchronized void setManualFramingRect(int width, int height) {
+        requestedFramingRectWidth = width;
+        requestedFramingRectHeight = height;
+        framingRect = null;
+    }
+
+    @Override
+    public LuminanceSource buildLuminanceSource(Object frame, int width, int height) {
+        Rect rect = getFramingRectInPreview();
+        if (rect == null) {
+            return null;
+        }
+        return new PlanarYUVLuminanceSource((byte[]) frame, width, height, rect.left, rect.top,
+                rect.width(), rect.height(), false);
+    }
+
+    @Override
+    public ZXingConfiguration getZXingConfiguration() {
+        return mZXingConfiguration;
+    }
+
+}
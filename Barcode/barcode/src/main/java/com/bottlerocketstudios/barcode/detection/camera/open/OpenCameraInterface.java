@@ -27,6 +27,30 @@ public final class OpenCameraInterface {
     }
 
 
+    /**
+     * The camera {@link #open(int)} would open.
+     *
+     * @param cameraId camera ID of the camera to use. A negative value means "no preference"
+     * @return camera ID, or -1 if there is no such camera
+     */
+    public static int findCameraId(int cameraId) {
+        int numCameras = Camera.getNumberOfCameras();
+        if (numCameras == 0) {
+            return -1;
+        }
+        if (cameraId >= 0) {
+            return cameraId < numCameras ? cameraId : -1;
+        }
+        for (int index = 0; index < numCameras; index++) {
+            Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
+            Camera.getCameraInfo(index, cameraInfo);
+            if (cameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_BACK) {
+                return index;
+            }
+        }
+        return 0;
+    }
+
     /**
      * Opens the requested camera with {@link android.hardware.Camera#open(int)}, if one exists.
      *
@@ -35,44 +59,19 @@ public final class OpenCameraInterface {
      */
     public static Camera open(int cameraId) {
 
-        int numCameras = Camera.getNumberOfCameras();
-        if (numCameras == 0) {
+        if (Camera.getNumberOfCameras() == 0) {
             Log.w(TAG, "No cameras!");
             return null;
         }
 
-        boolean explicitRequest = cameraId >= 0;
-
-        if (!explicitRequest) {
-            // Select a camera if no explicit camera requested
-            int index = 0;
-            while (index < numCameras) {
-                Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
-                Camera.getCameraInfo(index, cameraInfo);
-                if (cameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_BACK) {
-                    break;
-                }
-                index++;
-            }
-
-            cameraId = index;
-        }
-
-        Camera camera;
-        if (cameraId < numCameras) {
-            Log.i(TAG, "Opening camera #" + cameraId);
-            camera = Camera.open(cameraId);
-        } else {
-            if (explicitRequest) {
-                Log.w(TAG, "Requested camera does not exist: " + cameraId);
-                camera = null;
-            } else {
-                Log.i(TAG, "No camera facing back; returning camera #0");
-                camera = Camera.open(0);
-            }
+        int index = findCameraId(cameraId);
+        if (index < 0) {
+            Log.w(TAG, "Requested camera does not exist: " + cameraId);
+            return null;
         }
 
-        return camera;
+        Log.i(TAG, "Opening camera #" + index);
+        return Camera.open(index);
     }
 
 
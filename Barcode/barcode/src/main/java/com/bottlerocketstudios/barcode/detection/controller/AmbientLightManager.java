@@ -22,7 +22,7 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 
-import com.bottlerocketstudios.barcode.detection.camera.CameraManager;
+import com.bottlerocketstudios.barcode.detection.camera.CameraBackend;
 import com.bottlerocketstudios.barcode.detection.camera.FrontLightMode;
 
 
@@ -38,14 +38,14 @@ final class AmbientLightManager implements SensorEventListener {
     private static final float BRIGHT_ENOUGH_LUX = 450.0f;
 
     private final Context context;
-    private CameraManager cameraManager;
+    private CameraBackend cameraManager;
     private Sensor lightSensor;
 
     AmbientLightManager(Context context) {
         this.context = context.getApplicationContext();
     }
 
-    void start(CameraManager cameraManager) {
+    void start(CameraBackend cameraManager) {
         this.cameraManager = cameraManager;
         if (FrontLightMode.readPref(cameraManager.getZXingConfiguration()) == FrontLightMode.AUTO) {
             SensorManager sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
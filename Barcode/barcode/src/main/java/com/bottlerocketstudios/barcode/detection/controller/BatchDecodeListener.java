@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.google.zxing.Result;
+
+/**
+ * Receives the outcome of each image of a {@link BatchDecoder} batch on the main thread as soon as it
+ * is known, in whatever order the images finish.
+ */
+public interface BatchDecodeListener {
+    /**
+     * @param index   Position of the image in the batch.
+     * @param results Every distinct barcode found, empty if there were none.
+     */
+    public void onImageDecoded(int index, Result[] results);
+
+    /**
+     * @param index Position of the image in the batch.
+     * @param e     Why the image could not be read.
+     */
+    public void onImageFailed(int index, Exception e);
+
+    /**
+     * Every image of the batch has been reported.
+     */
+    public void onBatchComplete();
+}
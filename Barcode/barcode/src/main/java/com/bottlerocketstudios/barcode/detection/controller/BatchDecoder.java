@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.bottlerocketstudios.barcode.detection.model.ZXingConfiguration;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.Result;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds every barcode in a batch of still images, without a camera or a {@link ZXingFacade}. Images
+ * are decoded in parallel by a fixed number of background threads, each with its own readers, and
+ * each result is handed to the {@link BatchDecodeListener} as soon as its image is done.
+ * <p>
+ * The formats, character set and binarizer strategy come from the {@link ZXingConfiguration} as for
+ * scanning, the size and result limits from {@link ZXingConfiguration#KEY_BATCH_MAX_IMAGE_PIXELS},
+ * {@link ZXingConfiguration#KEY_BATCH_MAX_RESULTS} and {@link ZXingConfiguration#KEY_BATCH_TIME_BUDGET_MS}.
+ * A photo is decoded only once, so the readers always try harder.
+ * </p>
+ */
+public final class BatchDecoder {
+
+    private static final long IDLE_THREAD_TIMEOUT_S = 5L;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mMainHandler;
+    private final Map<DecodeHintType, Object> mHints;
+    private final BinarizerStrategy mBinarizerStrategy;
+    private final int mMaxImagePixels;
+    private final int mMaxResults;
+    private final int mTimeBudgetMs;
+
+    private final ThreadLocal<MultipleBarcodeDecoder> mDecoders = new ThreadLocal<MultipleBarcodeDecoder>() {
+        @Override
+        protected MultipleBarcodeDecoder initialValue() {
+            MultiFormatReader reader = new MultiFormatReader();
+            reader.setHints(mHints);
+            @SuppressWarnings("unchecked")
+            Collection<BarcodeFormat> formats = (Collection<BarcodeFormat>) mHints.get(DecodeHintType.POSSIBLE_FORMATS);
+            return new MultipleBarcodeDecoder(new PresetHintsReader(reader), mHints,
+                    formats == null || formats.contains(BarcodeFormat.QR_CODE), mMaxResults, mTimeBudgetMs);
+        }
+    };
+
+    /**
+     * Decode with one thread per available processor.
+     */
+    public BatchDecoder(ZXingConfiguration ZXingConfiguration) {
+        this(ZXingConfiguration, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threadCount Most images decoded at the same time.
+     */
+    public BatchDecoder(ZXingConfiguration ZXingConfiguration, int threadCount) {
+        mHints = DecodeThread.createHints(ZXingConfiguration);
+        mHints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        mBinarizerStrategy = ZXingConfiguration.getBinarizerStrategy() != null
+                ? ZXingConfiguration.getBinarizerStrategy()
+                : new HybridBinarizerStrategy();
+        mMaxImagePixels = ZXingConfiguration.getInt(ZXingConfiguration.KEY_BATCH_MAX_IMAGE_PIXELS, 4000000);
+        mMaxResults = Math.max(1, ZXingConfiguration.getInt(ZXingConfiguration.KEY_BATCH_MAX_RESULTS, 20));
+        mTimeBudgetMs = ZXingConfiguration.getInt(ZXingConfiguration.KEY_BATCH_TIME_BUDGET_MS, 2000);
+        mMainHandler = new Handler(Looper.getMainLooper());
+
+        threadCount = Math.max(1, threadCount);
+        mExecutor = new ThreadPoolExecutor(threadCount, threadCount, IDLE_THREAD_TIMEOUT_S, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new BatchThreadFactory());
+        // Nothing is kept running between batches, the readers go with their threads.
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queue a batch behind any batches already running.
+     *
+     * @return Handle to cancel the images not decoded yet.
+     */
+    public Batch decode(List<BatchImage> images, BatchDecodeListener listener) {
+        Batch batch = new Batch(images.size(), listener);
+        if (images.isEmpty()) {
+            batch.onImageDone();
+            return batch;
+        }
+        for (int i = 0; i < images.size(); i++) {
+            batch.mFutures.add(mExecutor.submit(new DecodeTask(batch, i, images.get(i))));
+        }
+        return batch;
+    }
+
+    /**
+     * Cancel everything still queued and let the threads go once the images being decoded are done.
+     * No further batches can be decoded.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    private Result[] decode(BatchImage image) throws IOException {
+        LuminanceSource source = image.createLuminanceSource(mMaxImagePixels);
+        Binarizer binarizer = mBinarizerStrategy.createBinarizer(source);
+        Result[] results = mDecoders.get().decode(new BinaryBitmap(binarizer));
+        mBinarizerStrategy.onDecodeAttempted(binarizer, results != null);
+        return results != null ? results : new Result[0];
+    }
+
+    /**
+     * The images of one call to {@link #decode(List, BatchDecodeListener)}.
+     */
+    public final class Batch {
+
+        private final List<Future<?>> mFutures;
+        private final BatchDecodeListener mListener;
+        private final AtomicInteger mRemaining;
+        private volatile boolean mCancelled;
+
+        private Batch(int size, BatchDecodeListener listener) {
+            mFutures = new ArrayList<Future<?>>(size);
+            mListener = listener;
+            mRemaining = new AtomicInteger(size);
+        }
+
+        /**
+         * Skip the images not started yet. Nothing more is reported to the listener, not even the end
+         * of the batch.
+         */
+        public void cancel() {
+            mCancelled = true;
+            for (Future<?> future : mFutures) {
+                future.cancel(false);
+            }
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        private void onImageDecoded(final int index, final Result[] results) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mCancelled) {
+                        mListener.onImageDecoded(index, results);
+                    }
+                }
+            });
+            onImageDone();
+        }
+
+        private void onImageFailed(final int index, final Exception e) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mCancelled) {
+                        mListener.onImageFailed(index, e);
+                    }
+                }
+            });
+            onImageDone();
+        }
+
+        private void onImageDone() {
+            if (mRemaining.decrementAndGet() <= 0) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mCancelled) {
+                            mListener.onBatchComplete();
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    private final class DecodeTask implements Runnable {
+
+        private final Batch mBatch;
+        private final int mIndex;
+        private final BatchImage mImage;
+
+        DecodeTask(Batch batch, int index, BatchImage image) {
+            mBatch = batch;
+            mIndex = index;
+            mImage = image;
+        }
+
+        @Override
+        public void run() {
+            if (mBatch.isCancelled()) {
+                return;
+            }
+            try {
+                mBatch.onImageDecoded(mIndex, decode(mImage));
+            } catch (IOException e) {
+                mBatch.onImageFailed(mIndex, e);
+            } catch (RuntimeException e) {
+                mBatch.onImageFailed(mIndex, e);
+            }
+        }
+    }
+
+    private static final class BatchThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mThreadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // Stay out of the way of the UI.
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "BatchDecode-" + mThreadCount.incrementAndGet());
+        }
+    }
+
+}
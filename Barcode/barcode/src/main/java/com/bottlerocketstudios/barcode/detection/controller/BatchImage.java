@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A still image for a {@link BatchDecoder}: an image file, an encoded image in memory or a bitmap.
+ * Files and encoded images are only decoded once a worker gets to them, so a large batch doesn't
+ * hold more than one full size image per worker in memory.
+ */
+public final class BatchImage {
+
+    private final File mFile;
+    private final byte[] mEncodedImage;
+    private final Bitmap mBitmap;
+
+    private BatchImage(File file, byte[] encodedImage, Bitmap bitmap) {
+        mFile = file;
+        mEncodedImage = encodedImage;
+        mBitmap = bitmap;
+    }
+
+    /**
+     * @param file An image in any format {@link BitmapFactory} understands.
+     */
+    public static BatchImage fromFile(File file) {
+        return new BatchImage(file, null, null);
+    }
+
+    /**
+     * @param encodedImage An image in any format {@link BitmapFactory} understands.
+     */
+    public static BatchImage fromEncodedImage(byte[] encodedImage) {
+        return new BatchImage(null, encodedImage, null);
+    }
+
+    /**
+     * @param bitmap Read but never modified or recycled.
+     */
+    public static BatchImage fromBitmap(Bitmap bitmap) {
+        return new BatchImage(null, null, bitmap);
+    }
+
+    /**
+     * Convert the image to luminance, subsampling it first if it has more than maxPixels. Encoded
+     * images are subsampled while they are decoded, bitmaps by averaging blocks of pixels.
+     *
+     * @throws IOException If the image can't be decoded.
+     */
+    LuminanceSource createLuminanceSource(int maxPixels) throws IOException {
+        if (mBitmap != null) {
+            return toLuminance(mBitmap, getSampleSize(mBitmap.getWidth(), mBitmap.getHeight(), maxPixels));
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Unable to read image " + describe());
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = getSampleSize(options.outWidth, options.outHeight, maxPixels);
+        Bitmap bitmap = decode(options);
+        if (bitmap == null) {
+            throw new IOException("Unable to decode image " + describe());
+        }
+        try {
+            return toLuminance(bitmap, 1);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private Bitmap decode(BitmapFactory.Options options) {
+        if (mFile != null) {
+            return BitmapFactory.decodeFile(mFile.getPath(), options);
+        }
+        return BitmapFactory.decodeByteArray(mEncodedImage, 0, mEncodedImage.length, options);
+    }
+
+    private String describe() {
+        return mFile != null ? mFile.getPath() : "of " + mEncodedImage.length + " bytes";
+    }
+
+    /**
+     * @return The smallest power of two that brings the image down to maxPixels.
+     */
+    private static int getSampleSize(int width, int height, int maxPixels) {
+        int sampleSize = 1;
+        while ((long) (width / sampleSize) * (height / sampleSize) > maxPixels) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Average each sampleSize square of pixels into one luminance value, weighting green double like
+     * {@link com.google.zxing.RGBLuminanceSource}. Reads a row at a time so only the output is held.
+     */
+    private static LuminanceSource toLuminance(Bitmap bitmap, int sampleSize) {
+        int width = bitmap.getWidth();
+        int outWidth = width / sampleSize;
+        int outHeight = bitmap.getHeight() / sampleSize;
+        byte[] luminance = new byte[outWidth * outHeight];
+        int[] row = new int[width];
+        int[] sums = new int[outWidth];
+        int divisor = 4 * sampleSize * sampleSize;
+        for (int y = 0; y < outHeight; y++) {
+            for (int x = 0; x < outWidth; x++) {
+                sums[x] = 0;
+            }
+            for (int dy = 0; dy < sampleSize; dy++) {
+                bitmap.getPixels(row, 0, width, 0, y * sampleSize + dy, width, 1);
+                for (int x = 0; x < outWidth; x++) {
+                    int sum = 0;
+                    for (int dx = 0, i = x * sampleSize; dx < sampleSize; dx++, i++) {
+                        int pixel = row[i];
+                        sum += ((pixel >> 16) & 0xff) + ((pixel >> 7) & 0x1fe) + (pixel & 0xff);
+                    }
+                    sums[x] += sum;
+                }
+            }
+            int offset = y * outWidth;
+            for (int x = 0; x < outWidth; x++) {
+                luminance[offset + x] = (byte) (sums[x] / divisor);
+            }
+        }
+        return new PlanarYUVLuminanceSource(luminance, outWidth, outHeight, 0, 0, outWidth, outHeight, false);
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import android.os.Handler;
+
+/**
+ * Decodes preview frames sent to {@link #getHandler()} as {@link com.bottlerocketstudios.barcode.detection.model.ZXingIds#DECODE}
+ * messages and reports each of them back to the {@link ZXingFacadeHandler} as exactly one
+ * DECODE_SUCCEEDED or DECODE_FAILED message.
+ */
+interface DecodeEngine {
+
+    void start();
+
+    /**
+     * @return Handler which preview frames should be delivered to.
+     */
+    Handler getHandler();
+
+    /**
+     * @return Number of frames which can be decoded at the same time.
+     */
+    int getWorkerCount();
+
+    /**
+     * Called when decoding resumes after a successful decode was delivered. Frames of the previous round
+     * that are still being decoded or waiting to be must not be reported as successes after this.
+     */
+    void resumeDecoding();
+
+    /**
+     * Stop decoding and wait briefly for the worker threads to exit.
+     */
+    void quitSynchronously();
+
+}
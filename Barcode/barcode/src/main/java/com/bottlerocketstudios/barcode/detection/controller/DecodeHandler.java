@@ -23,30 +23,57 @@ import android.os.Looper;
 import android.os.Message;
 import android.util.Log;
 
+import com.bottlerocketstudios.barcode.detection.camera.CameraBackend;
+import com.bottlerocketstudios.barcode.detection.model.ZXingConfiguration;
 import com.bottlerocketstudios.barcode.detection.model.ZXingIds;
-import com.google.zxing.BinaryBitmap;
 import com.google.zxing.DecodeHintType;
-import com.google.zxing.MultiFormatReader;
-import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.ReaderException;
+import com.google.zxing.LuminanceSource;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
 
-import java.io.ByteArrayOutputStream;
 import java.util.Map;
 
+/**
+ * Runs the {@link FrameDecoder} on the frames delivered to a decode thread and reports the outcome to
+ * the {@link ZXingFacadeHandler}. A {@link ZXingIds#RESUME_DECODING} message marks the start of a new
+ * round in the queue, a frame decoded while one is still waiting belongs to an earlier round and is
+ * never reported as a success.
+ */
 final class DecodeHandler extends Handler {
 
     private static final String TAG = DecodeHandler.class.getSimpleName();
 
+    private static final int THUMBNAIL_SCALE_FACTOR = 2;
+
     private final IDecodeHandlerListener mDecodeHandlerListener;
-    private final MultiFormatReader multiFormatReader;
+    private final FrameDecoder mFrameDecoder;
+    private final DecodeMetrics mDecodeMetrics;
+    private final int mWorkerId;
+    private final boolean mMultipleResults;
+    private final boolean mResultThumbnail;
     private boolean running = true;
 
-    DecodeHandler(IDecodeHandlerListener decodeHandlerListener, Map<DecodeHintType, Object> hints) {
-        multiFormatReader = new MultiFormatReader();
-        multiFormatReader.setHints(hints);
+    DecodeHandler(IDecodeHandlerListener decodeHandlerListener,
+                  Map<DecodeHintType, Object> hints,
+                  ZXingConfiguration ZXingConfiguration,
+                  DecodeSession decodeSession,
+                  int workerId) {
+        mMultipleResults = ZXingConfiguration.getBoolean(ZXingConfiguration.KEY_MULTIPLE_RESULTS, false);
+        FrameDecoder.FrameDecoderBuilder builder = new FrameDecoder.FrameDecoderBuilder()
+                .hints(hints)
+                .decodeSession(decodeSession)
+                .binarizerStrategy(ZXingConfiguration.getBinarizerStrategy())
+                .pyramidDownsample(ZXingConfiguration.getInt(ZXingConfiguration.KEY_PYRAMID_DOWNSAMPLE, 1))
+                .frameTimeBudgetMs(ZXingConfiguration.getInt(ZXingConfiguration.KEY_FRAME_TIME_BUDGET_MS, 0));
+        if (mMultipleResults) {
+            builder.multipleResults(
+                    Math.max(1, ZXingConfiguration.getInt(ZXingConfiguration.KEY_MAX_RESULTS_PER_FRAME, 6)),
+                    ZXingConfiguration.getInt(ZXingConfiguration.KEY_MULTIPLE_RESULTS_TIME_BUDGET_MS, 250));
+        }
+        mFrameDecoder = builder.build();
+        mDecodeMetrics = decodeSession.getDecodeMetrics();
         mDecodeHandlerListener = decodeHandlerListener;
+        mWorkerId = workerId;
+        mResultThumbnail = ZXingConfiguration.getBoolean(ZXingConfiguration.KEY_RESULT_THUMBNAIL, false);
     }
 
     @Override
@@ -56,7 +83,10 @@ final class DecodeHandler extends Handler {
         }
         switch (message.what) {
             case ZXingIds.DECODE:
-                decode((byte[]) message.obj, message.arg1, message.arg2);
+                decode(message.obj, message.arg1, message.arg2);
+                break;
+            case ZXingIds.RESUME_DECODING:
+                // Only marks where the frames of the new round start in the queue.
                 break;
             case ZXingIds.QUIT:
                 running = false;
@@ -66,57 +96,98 @@ final class DecodeHandler extends Handler {
     }
 
     /**
-     * Decode the data within the viewfinder rectangle, and time how long it took. For efficiency,
-     * reuse the same reader objects from one decode to the next.
+     * Decode the data within the viewfinder rectangle, and time how long it took.
      *
-     * @param data   The YUV preview frame.
+     * @param frame  The preview frame as delivered by the camera backend.
      * @param width  The width of the preview frame.
      * @param height The height of the preview frame.
      */
-    private void decode(byte[] data, int width, int height) {
-        long start = System.currentTimeMillis();
-        Result rawResult = null;
-        PlanarYUVLuminanceSource source = mDecodeHandlerListener.getCameraManager().buildLuminanceSource(data, width, height);
+    private void decode(Object frame, int width, int height) {
+        long start = System.nanoTime();
+        Result[] rawResults = null;
+        CameraBackend cameraManager = mDecodeHandlerListener.getCameraManager();
+        LuminanceSource source = cameraManager.buildLuminanceSource(frame, width, height);
+        int retryDelay = 0;
         if (source != null) {
-            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-            try {
-                rawResult = multiFormatReader.decodeWithState(bitmap);
-            } catch (ReaderException re) {
-                // continue
-            } finally {
-                multiFormatReader.reset();
+            mDecodeMetrics.getLuminanceSource().record(System.nanoTime() - start);
+            rawResults = mFrameDecoder.decode(source);
+            retryDelay = mFrameDecoder.getRetryDelay();
+            if (!mFrameDecoder.isLastFrameDuplicate()) {
+                // A skipped duplicate says nothing new about the focus.
+                cameraManager.onFrameDecoded(mFrameDecoder.isLastFrameDecoded(), mFrameDecoder.isLastFrameBlurry(),
+                        mFrameDecoder.isLastFramePartial());
             }
+        } else {
+            mDecodeMetrics.onFrameProcessed(false);
+        }
+
+        if (rawResults != null && hasMessages(ZXingIds.RESUME_DECODING)) {
+            // Captured before decoding resumed after the last result, the app deliberately waited to move
+            // past this scene, so it counts as a failure.
+            rawResults = null;
+            retryDelay = 0;
         }
 
         Handler handler = mDecodeHandlerListener.getHandler();
-        if (rawResult != null) {
+        if (rawResults != null) {
             // Don't log the barcode contents for security.
-            long end = System.currentTimeMillis();
-            Log.d(TAG, "Found barcode in " + (end - start) + " ms");
+            long end = System.nanoTime();
+            Log.d(TAG, "Found " + rawResults.length + " barcode(s) in " + (end - start) / 1000000L + " ms");
             if (handler != null) {
-                Message message = Message.obtain(handler, ZXingIds.DECODE_SUCCEEDED, rawResult);
+                Message message = Message.obtain(handler, ZXingIds.DECODE_SUCCEEDED,
+                        mMultipleResults ? rawResults : rawResults[0]);
+                message.arg2 = mWorkerId;
                 Bundle bundle = new Bundle();
-                bundleThumbnail(source, bundle);
+                bundle.putLong(DecodeThread.RESULT_FOUND_NANOS, end);
+                if (mResultThumbnail) {
+                    bundleThumbnail(source, bundle);
+                }
                 message.setData(bundle);
                 message.sendToTarget();
             }
         } else {
             if (handler != null) {
                 Message message = Message.obtain(handler, ZXingIds.DECODE_FAILED);
+                message.arg1 = retryDelay;
+                message.arg2 = mWorkerId;
                 message.sendToTarget();
             }
         }
+
+        // Nothing references the frame past this point, let the camera fill it again.
+        cameraManager.releasePreviewFrame(frame);
     }
 
-    private static void bundleThumbnail(PlanarYUVLuminanceSource source, Bundle bundle) {
-        int[] pixels = source.renderThumbnail();
-        int width = source.getThumbnailWidth();
-        int height = source.getThumbnailHeight();
-        Bitmap bitmap = Bitmap.createBitmap(pixels, 0, width, width, height, Bitmap.Config.ARGB_8888);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 50, out);
-        bundle.putByteArray(DecodeThread.BARCODE_BITMAP, out.toByteArray());
+    /**
+     * Render the thumbnail into a mutable bitmap on this thread. The bundle never leaves the process
+     * so the bitmap is handed over as-is, without being compressed or parceled.
+     */
+    private static void bundleThumbnail(LuminanceSource source, Bundle bundle) {
+        int width = source.getWidth() / THUMBNAIL_SCALE_FACTOR;
+        int height = source.getHeight() / THUMBNAIL_SCALE_FACTOR;
+        int[] pixels = renderThumbnail(source, width, height);
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+        bundle.putParcelable(DecodeThread.BARCODE_BITMAP, bitmap);
         bundle.putFloat(DecodeThread.BARCODE_SCALED_FACTOR, (float) width / source.getWidth());
     }
 
+    /**
+     * Greyscale ARGB pixels of every {@link #THUMBNAIL_SCALE_FACTOR}th luminance sample.
+     */
+    private static int[] renderThumbnail(LuminanceSource source, int width, int height) {
+        byte[] luminance = source.getMatrix();
+        int sourceWidth = source.getWidth();
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int inputOffset = y * THUMBNAIL_SCALE_FACTOR * sourceWidth;
+            int outputOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                int grey = luminance[inputOffset + x * THUMBNAIL_SCALE_FACTOR] & 0xff;
+                pixels[outputOffset + x] = 0xFF000000 | (grey * 0x00010101);
+            }
+        }
+        return pixels;
+    }
+
 }
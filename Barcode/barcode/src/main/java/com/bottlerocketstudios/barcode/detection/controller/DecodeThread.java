@@ -18,10 +18,12 @@ package com.bottlerocketstudios.barcode.detection.controller;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Message;
 import android.util.Log;
 
 import com.bottlerocketstudios.barcode.detection.model.DecodeFormatManager;
 import com.bottlerocketstudios.barcode.detection.model.ZXingConfiguration;
+import com.bottlerocketstudios.barcode.detection.model.ZXingIds;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.DecodeHintType;
 import com.google.zxing.ResultPointCallback;
@@ -37,25 +39,55 @@ import java.util.concurrent.CountDownLatch;
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
-final class DecodeThread<T> extends Thread {
+final class DecodeThread<T> extends Thread implements DecodeEngine {
     private static final String TAG = DecodeThread.class.getSimpleName();
 
     public static final String BARCODE_BITMAP = "barcode_bitmap";
     public static final String BARCODE_SCALED_FACTOR = "barcode_scaled_factor";
+    static final String RESULT_FOUND_NANOS = "result_found_nanos";
 
     private final IDecodeHandlerListener mDecodeHandlerListener;
+    private final int mWorkerId;
+    private final ZXingConfiguration mZXingConfiguration;
+    private final DecodeSession mDecodeSession;
     private final Map<DecodeHintType, Object> hints;
     private Handler handler;
     private final CountDownLatch handlerInitLatch;
 
     DecodeThread(IDecodeHandlerListener decodeHandlerListener,
                  ResultPointCallback resultPointCallback,
-                 ZXingConfiguration ZXingConfiguration) {
+                 ZXingConfiguration ZXingConfiguration,
+                 DecodeSession decodeSession) {
+        this(decodeHandlerListener, resultPointCallback, ZXingConfiguration, decodeSession, 0);
+    }
+
+    /**
+     * @param decodeSession State shared with the other workers decoding the same preview.
+     * @param workerId      Identifies this thread in the arg2 field of the result messages it sends.
+     */
+    DecodeThread(IDecodeHandlerListener decodeHandlerListener,
+                 ResultPointCallback resultPointCallback,
+                 ZXingConfiguration ZXingConfiguration,
+                 DecodeSession decodeSession,
+                 int workerId) {
 
         mDecodeHandlerListener = decodeHandlerListener;
+        mWorkerId = workerId;
+        mZXingConfiguration = ZXingConfiguration;
+        mDecodeSession = decodeSession;
         handlerInitLatch = new CountDownLatch(1);
 
-        hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        hints = createHints(ZXingConfiguration);
+        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, resultPointCallback);
+        Log.i(TAG, "Hints: " + hints);
+    }
+
+    /**
+     * Build the hints for the formats and character set in the configuration, shared by every reader
+     * decoding with it.
+     */
+    static Map<DecodeHintType, Object> createHints(ZXingConfiguration ZXingConfiguration) {
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
         if (ZXingConfiguration.getBaseHints() != null) {
             hints.putAll(ZXingConfiguration.getBaseHints());
         }
@@ -90,11 +122,11 @@ final class DecodeThread<T> extends Thread {
         if (ZXingConfiguration.getCharacterSet() != null) {
             hints.put(DecodeHintType.CHARACTER_SET, ZXingConfiguration.getCharacterSet());
         }
-        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, resultPointCallback);
-        Log.i(TAG, "Hints: " + hints);
+        return hints;
     }
 
-    Handler getHandler() {
+    @Override
+    public Handler getHandler() {
         try {
             handlerInitLatch.await();
         } catch (InterruptedException ie) {
@@ -103,10 +135,33 @@ final class DecodeThread<T> extends Thread {
         return handler;
     }
 
+    @Override
+    public int getWorkerCount() {
+        return 1;
+    }
+
+    @Override
+    public void resumeDecoding() {
+        // Queued behind any frames of the last round, so the handler can tell them apart.
+        Message.obtain(getHandler(), ZXingIds.RESUME_DECODING).sendToTarget();
+    }
+
+    @Override
+    public void quitSynchronously() {
+        Message quit = Message.obtain(getHandler(), ZXingIds.QUIT);
+        quit.sendToTarget();
+        try {
+            // Wait at most half a second; should be enough time, and onPause() will timeout quickly
+            join(500L);
+        } catch (InterruptedException e) {
+            // continue
+        }
+    }
+
     @Override
     public void run() {
         Looper.prepare();
-        handler = new DecodeHandler(mDecodeHandlerListener, hints);
+        handler = new DecodeHandler(mDecodeHandlerListener, hints, mZXingConfiguration, mDecodeSession, mWorkerId);
         handlerInitLatch.countDown();
         Looper.loop();
     }
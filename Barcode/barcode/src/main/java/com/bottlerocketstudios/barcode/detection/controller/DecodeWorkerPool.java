@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import android.os.Handler;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.bottlerocketstudios.barcode.detection.camera.CameraBackend;
+import com.bottlerocketstudios.barcode.detection.model.ZXingConfiguration;
+import com.bottlerocketstudios.barcode.detection.model.ZXingIds;
+import com.google.zxing.ResultPointCallback;
+
+/**
+ * Runs several {@link DecodeThread} workers, each with its own reader, and hands every incoming
+ * frame to whichever worker is idle. When all of them are busy only the newest frame is held back;
+ * the one it replaces is dropped instead of queued. Worker results come back through this handler
+ * so that only the first success of a round is forwarded to the {@link ZXingFacadeHandler}, or every
+ * success when scanning continuously.
+ * <p>
+ * This handler runs on the thread that created it, which must be the same as the facade handler.
+ * </p>
+ */
+final class DecodeWorkerPool extends Handler implements DecodeEngine, IDecodeHandlerListener {
+
+    private static final String TAG = DecodeWorkerPool.class.getSimpleName();
+
+    private static final long QUIT_TIMEOUT_MS = 500L;
+
+    private final IDecodeHandlerListener mDecodeHandlerListener;
+    private final DecodeThread[] mWorkers;
+    private final boolean[] mWorkerBusy;
+    private final boolean mContinuousScan;
+    private final DecodeMetrics mDecodeMetrics;
+
+    private Object mPendingFrame;
+    private int mPendingWidth;
+    private int mPendingHeight;
+    private boolean mResultDelivered;
+
+    DecodeWorkerPool(IDecodeHandlerListener decodeHandlerListener,
+                     ResultPointCallback resultPointCallback,
+                     ZXingConfiguration ZXingConfiguration,
+                     DecodeSession decodeSession,
+                     int workerCount) {
+        mDecodeHandlerListener = decodeHandlerListener;
+        mWorkers = new DecodeThread[workerCount];
+        mWorkerBusy = new boolean[workerCount];
+        mContinuousScan = ZXingConfiguration.getBoolean(ZXingConfiguration.KEY_CONTINUOUS_SCAN, false);
+        mDecodeMetrics = decodeSession.getDecodeMetrics();
+        for (int i = 0; i < workerCount; i++) {
+            mWorkers[i] = new DecodeThread(this, resultPointCallback, ZXingConfiguration, decodeSession, i);
+        }
+        Log.i(TAG, "Decoding with " + workerCount + " workers");
+    }
+
+    @Override
+    public void start() {
+        for (DecodeThread worker : mWorkers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * Both preview frames and worker results are delivered to this handler.
+     */
+    @Override
+    public Handler getHandler() {
+        return this;
+    }
+
+    @Override
+    public CameraBackend getCameraManager() {
+        return mDecodeHandlerListener.getCameraManager();
+    }
+
+    @Override
+    public int getWorkerCount() {
+        return mWorkers.length;
+    }
+
+    @Override
+    public void resumeDecoding() {
+        mResultDelivered = false;
+        for (DecodeThread worker : mWorkers) {
+            worker.resumeDecoding();
+        }
+    }
+
+    @Override
+    public void handleMessage(Message message) {
+        switch (message.what) {
+            case ZXingIds.DECODE:
+                onFrame(message.obj, message.arg1, message.arg2);
+                break;
+            case ZXingIds.DECODE_SUCCEEDED:
+            case ZXingIds.DECODE_FAILED:
+                onWorkerResult(message);
+                break;
+        }
+    }
+
+    private void onFrame(Object data, int width, int height) {
+        if (mResultDelivered) {
+            // This round is already over, nothing more to decode until resumeDecoding().
+            dropFrame(data);
+            return;
+        }
+
+        int worker = findIdleWorker();
+        if (worker >= 0) {
+            dispatch(worker, data, width, height);
+        } else {
+            if (mPendingFrame != null) {
+                dropFrame(mPendingFrame);
+            }
+            mPendingFrame = data;
+            mPendingWidth = width;
+            mPendingHeight = height;
+        }
+    }
+
+    private void onWorkerResult(Message message) {
+        mWorkerBusy[message.arg2] = false;
+
+        if (message.what == ZXingIds.DECODE_SUCCEEDED && mContinuousScan) {
+            // Every result is wanted and decoding carries on.
+            forwardSuccess(message);
+        } else if (message.what == ZXingIds.DECODE_SUCCEEDED && !mResultDelivered) {
+            mResultDelivered = true;
+            if (mPendingFrame != null) {
+                dropFrame(mPendingFrame);
+                mPendingFrame = null;
+            }
+            forwardSuccess(message);
+        } else {
+            // Later successes from frames that were already in flight are reported as failures so
+            // the facade still sees a single success per round.
+            sendFailed(message.what == ZXingIds.DECODE_FAILED ? message.arg1 : 0);
+        }
+
+        if (mPendingFrame != null) {
+            Object data = mPendingFrame;
+            mPendingFrame = null;
+            dispatch(message.arg2, data, mPendingWidth, mPendingHeight);
+        }
+    }
+
+    private void forwardSuccess(Message message) {
+        Handler handler = mDecodeHandlerListener.getHandler();
+        if (handler != null) {
+            Message forward = Message.obtain(handler, ZXingIds.DECODE_SUCCEEDED, message.obj);
+            forward.setData(message.getData());
+            forward.sendToTarget();
+        }
+    }
+
+    private int findIdleWorker() {
+        for (int i = 0; i < mWorkerBusy.length; i++) {
+            if (!mWorkerBusy[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void dispatch(int worker, Object data, int width, int height) {
+        mWorkerBusy[worker] = true;
+        Message message = Message.obtain(mWorkers[worker].getHandler(), ZXingIds.DECODE, width, height, data);
+        message.sendToTarget();
+    }
+
+    /**
+     * Give a frame that will not be decoded back to the camera and account for it as a failure so the
+     * facade can request another.
+     */
+    private void dropFrame(Object data) {
+        mDecodeMetrics.onFrameDropped();
+        CameraBackend cameraManager = getCameraManager();
+        if (cameraManager != null) {
+            cameraManager.releasePreviewFrame(data);
+        }
+        sendFailed(0);
+    }
+
+    /**
+     * @param retryDelay Passed on in arg1, see {@link ZXingFacadeHandler}.
+     */
+    private void sendFailed(int retryDelay) {
+        Handler handler = mDecodeHandlerListener.getHandler();
+        if (handler != null) {
+            Message.obtain(handler, ZXingIds.DECODE_FAILED, retryDelay, 0).sendToTarget();
+        }
+    }
+
+    @Override
+    public void quitSynchronously() {
+        for (DecodeThread worker : mWorkers) {
+            Message.obtain(worker.getHandler(), ZXingIds.QUIT).sendToTarget();
+        }
+        long deadline = SystemClock.uptimeMillis() + QUIT_TIMEOUT_MS;
+        for (DecodeThread worker : mWorkers) {
+            long remaining = deadline - SystemClock.uptimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                worker.join(remaining);
+            } catch (InterruptedException e) {
+                // continue
+            }
+        }
+        removeMessages(ZXingIds.DECODE);
+        removeMessages(ZXingIds.DECODE_SUCCEEDED);
+        removeMessages(ZXingIds.DECODE_FAILED);
+        mPendingFrame = null;
+    }
+
+}
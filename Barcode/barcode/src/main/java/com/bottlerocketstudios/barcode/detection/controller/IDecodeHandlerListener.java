@@ -18,9 +18,9 @@ package com.bottlerocketstudios.barcode.detection.controller;
 
 import android.os.Handler;
 
-import com.bottlerocketstudios.barcode.detection.camera.CameraManager;
+import com.bottlerocketstudios.barcode.detection.camera.CameraBackend;
 
 public interface IDecodeHandlerListener {
-    public CameraManager getCameraManager();
+    public CameraBackend getCameraManager();
     Handler getHandler();
 }
@@ -18,12 +18,17 @@ package com.bottlerocketstudios.barcode.detection.controller;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.os.Build;
 import android.os.Handler;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 
+import com.bottlerocketstudios.barcode.detection.camera.Camera2Manager;
+import com.bottlerocketstudios.barcode.detection.camera.CameraApi;
+import com.bottlerocketstudios.barcode.detection.camera.CameraBackend;
 import com.bottlerocketstudios.barcode.detection.camera.CameraManager;
+import com.bottlerocketstudios.barcode.detection.camera.ReplayCameraBackend;
 import com.bottlerocketstudios.barcode.detection.model.ZXingConfiguration;
 import com.bottlerocketstudios.barcode.detection.model.ZXingIds;
 import com.google.zxing.Result;
@@ -37,7 +42,9 @@ public class ZXingFacade implements IDecodeHandlerListener {
     private final Context mContext;
     private final AmbientLightManager mAmbientLightManager;
     private final ZXingConfiguration mZXingConfiguration;
-    private CameraManager mCameraManager;
+    private final DecodeStatistics mDecodeStatistics;
+    private final DecodeMetrics mDecodeMetrics;
+    private CameraBackend mCameraManager;
     private SurfaceView mSurfaceView;
     private boolean mHasSurface;
     private ZXingFacadeHandler mDecodeHandler;
@@ -48,6 +55,8 @@ public class ZXingFacade implements IDecodeHandlerListener {
         mContext = context.getApplicationContext();
         mAmbientLightManager = new AmbientLightManager(mContext);
         mZXingConfiguration = ZXingConfiguration;
+        mDecodeStatistics = new DecodeStatistics();
+        mDecodeMetrics = new DecodeMetrics();
         mZXingFacadeListener = listener;
     }
 
@@ -65,7 +74,8 @@ public class ZXingFacade implements IDecodeHandlerListener {
      * Must be called from onResume lifecycle of host UI
      */
     public void onResume() {
-        mCameraManager = new CameraManager(mContext, mZXingConfiguration);
+        mCameraManager = createCameraBackend();
+        mCameraManager.setFrameWaitHistogram(mDecodeMetrics.getFrameWait());
         SurfaceHolder surfaceHolder = mSurfaceView.getHolder();
         if (mHasSurface) {
             // The activity was paused but not stopped, so the surface still exists. Therefore
@@ -116,7 +126,7 @@ public class ZXingFacade implements IDecodeHandlerListener {
     };
 
     @Override
-    public CameraManager getCameraManager() {
+    public CameraBackend getCameraManager() {
         return mCameraManager;
     }
 
@@ -129,6 +139,20 @@ public class ZXingFacade implements IDecodeHandlerListener {
         mZXingFacadeListener.handleDecode(rawResult, barcode, scaleFactor);
     }
 
+    /**
+     * Deliver all barcodes found in one frame. Listeners that do not implement
+     * {@link ZXingFacadeMultipleResultListener} get one {@link ZXingFacadeListener#handleDecode} call per barcode.
+     */
+    public void handleDecodeMultiple(Result[] rawResults, Bitmap barcode, float scaleFactor) {
+        if (mZXingFacadeListener instanceof ZXingFacadeMultipleResultListener) {
+            ((ZXingFacadeMultipleResultListener) mZXingFacadeListener).handleDecodeMultiple(rawResults, barcode, scaleFactor);
+        } else {
+            for (Result rawResult : rawResults) {
+                mZXingFacadeListener.handleDecode(rawResult, barcode, scaleFactor);
+            }
+        }
+    }
+
     /**
      * When preview has been stopped due to decode, restart the preview.
      *
@@ -140,6 +164,16 @@ public class ZXingFacade implements IDecodeHandlerListener {
         }
     }
 
+    private CameraBackend createCameraBackend() {
+        if (mZXingConfiguration.getString(ZXingConfiguration.KEY_FRAME_REPLAY_PATH, null) != null) {
+            return new ReplayCameraBackend(mZXingConfiguration);
+        }
+        if (CameraApi.readPref(mZXingConfiguration) == CameraApi.CAMERA2 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return new Camera2Manager(mContext, mZXingConfiguration);
+        }
+        return new CameraManager(mContext, mZXingConfiguration);
+    }
+
     private void initCamera(SurfaceHolder surfaceHolder) {
         if (surfaceHolder == null) {
             throw new IllegalStateException("No SurfaceHolder provided");
@@ -165,6 +199,20 @@ public class ZXingFacade implements IDecodeHandlerListener {
         }
     }
 
+    /**
+     * Counters for every frame decoded by this facade, across pauses and resumes.
+     */
+    public DecodeStatistics getDecodeStatistics() {
+        return mDecodeStatistics;
+    }
+
+    /**
+     * Per stage timings and frame counts for every frame handled by this facade, across pauses and resumes.
+     */
+    public DecodeMetrics getDecodeMetrics() {
+        return mDecodeMetrics;
+    }
+
     public void setResultPointCallback(ResultPointCallback resultPointCallback) {
         mResultPointCallback = resultPointCallback;
     }
@@ -17,12 +17,11 @@
 package com.bottlerocketstudios.barcode.detection.controller;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 
-import com.bottlerocketstudios.barcode.detection.camera.CameraManager;
+import com.bottlerocketstudios.barcode.detection.camera.CameraBackend;
 import com.bottlerocketstudios.barcode.detection.model.ZXingConfiguration;
 import com.bottlerocketstudios.barcode.detection.model.ZXingIds;
 import com.google.zxing.Result;
@@ -30,6 +29,15 @@ import com.google.zxing.ResultPointCallback;
 
 /**
  * This class handles all the messaging which comprises the state machine for capture.
+ * <p>
+ * A {@link ZXingIds#DECODE_FAILED} message may carry a delay in milliseconds in arg1, in which case
+ * the next frame is only requested once it has passed, whatever the other frames in flight report
+ * meanwhile.
+ * </p>
+ * <p>
+ * When scanning continuously every result is handed to the facade and the handler stays in the
+ * preview state, so there is nothing to restart.
+ * </p>
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
@@ -38,8 +46,15 @@ public final class ZXingFacadeHandler extends Handler {
     private static final String TAG = ZXingFacadeHandler.class.getSimpleName();
 
     private final ZXingFacade mZXingFacade;
-    private final DecodeThread decodeThread;
-    private final CameraManager mCameraManager;
+    private final DecodeEngine mDecodeEngine;
+    private final CameraBackend mCameraManager;
+    private final int mMaxFramesInFlight;
+    private final boolean mContinuousScan;
+    private final DecodeMetrics mDecodeMetrics;
+    private final DecodeGovernor mDecodeGovernor;
+    private int mFramesInFlight;
+    private long mPreviewStartNanos;
+    private boolean mFirstDecodeRecorded;
     private State state;
 
     private enum State {
@@ -52,8 +67,16 @@ public final class ZXingFacadeHandler extends Handler {
                        ResultPointCallback resultPointCallback,
                        ZXingConfiguration ZXingConfiguration) {
         this.mZXingFacade = ZXingFacade;
-        decodeThread = new DecodeThread(ZXingFacade, resultPointCallback, ZXingConfiguration);
-        decodeThread.start();
+        mDecodeMetrics = ZXingFacade.getDecodeMetrics();
+        DecodeSession decodeSession = createDecodeSession(ZXingConfiguration, ZXingFacade.getDecodeStatistics(),
+                mDecodeMetrics);
+        mDecodeGovernor = decodeSession.getDecodeGovernor();
+        mDecodeEngine = createDecodeEngine(ZXingFacade, resultPointCallback, ZXingConfiguration, decodeSession);
+        mDecodeEngine.start();
+        // Every worker has a frame to decode, any extra pipeline depth is captured while they work.
+        int pipelineDepth = Math.max(1, ZXingConfiguration.getInt(ZXingConfiguration.KEY_PIPELINE_DEPTH, 1));
+        mMaxFramesInFlight = mDecodeEngine.getWorkerCount() + pipelineDepth - 1;
+        mContinuousScan = ZXingConfiguration.getBoolean(ZXingConfiguration.KEY_CONTINUOUS_SCAN, false);
         state = State.SUCCESS;
 
         // Start ourselves capturing previews and decoding.
@@ -62,6 +85,40 @@ public final class ZXingFacadeHandler extends Handler {
         restartPreviewAndDecode();
     }
 
+    private static DecodeEngine createDecodeEngine(ZXingFacade ZXingFacade,
+                                                   ResultPointCallback resultPointCallback,
+                                                   ZXingConfiguration ZXingConfiguration,
+                                                   DecodeSession decodeSession) {
+        int workerCount = Math.min(
+                ZXingConfiguration.getInt(ZXingConfiguration.KEY_DECODE_WORKER_COUNT, 1),
+                Runtime.getRuntime().availableProcessors());
+        if (workerCount > 1) {
+            return new DecodeWorkerPool(ZXingFacade, resultPointCallback, ZXingConfiguration, decodeSession, workerCount);
+        }
+        return new DecodeThread(ZXingFacade, resultPointCallback, ZXingConfiguration, decodeSession);
+    }
+
+    private static DecodeSession createDecodeSession(ZXingConfiguration ZXingConfiguration,
+                                                     DecodeStatistics decodeStatistics,
+                                                     DecodeMetrics decodeMetrics) {
+        int repeatWindowMs = ZXingConfiguration.getBoolean(ZXingConfiguration.KEY_CONTINUOUS_SCAN, false)
+                ? ZXingConfiguration.getInt(ZXingConfiguration.KEY_CONTINUOUS_SCAN_REPEAT_WINDOW_MS, 0)
+                : 0;
+        return new DecodeSession(
+                ZXingConfiguration.getInt(ZXingConfiguration.KEY_REGION_TRACKING_MISSES, 0),
+                ZXingConfiguration.getBoolean(ZXingConfiguration.KEY_ADAPTIVE_READER_ORDER, false),
+                ZXingConfiguration.getInt(ZXingConfiguration.KEY_MIN_FRAME_SHARPNESS, 0),
+                ZXingConfiguration.getInt(ZXingConfiguration.KEY_MIN_FRAME_CONTRAST, 0),
+                ZXingConfiguration.getInt(ZXingConfiguration.KEY_DUPLICATE_FRAME_THRESHOLD, 0),
+                repeatWindowMs,
+                ZXingConfiguration.getInt(ZXingConfiguration.KEY_SOFTWARE_INVERT_MISSES, 0),
+                ZXingConfiguration.getInt(ZXingConfiguration.KEY_TRY_HARDER_INTERVAL, 0),
+                ZXingConfiguration.getInt(ZXingConfiguration.KEY_TRY_HARDER_MISSES, 0),
+                ZXingConfiguration.getInt(ZXingConfiguration.KEY_DECODE_DUTY_CYCLE_PERCENT, 100),
+                decodeStatistics,
+                decodeMetrics);
+    }
+
     @Override
     public void handleMessage(Message message) {
         switch (message.what) {
@@ -69,50 +126,97 @@ public final class ZXingFacadeHandler extends Handler {
                 restartPreviewAndDecode();
                 break;
             case ZXingIds.DECODE_SUCCEEDED:
-                state = State.SUCCESS;
+                mFramesInFlight--;
+                if (state != State.PREVIEW) {
+                    // Another frame already produced the result for this round.
+                    break;
+                }
+                if (!mContinuousScan) {
+                    state = State.SUCCESS;
+                    removeMessages(ZXingIds.REQUEST_PREVIEW_FRAMES);
+                    mFramesInFlight -= mCameraManager.cancelPreviewFrameRequests();
+                }
                 Bundle bundle = message.getData();
                 Bitmap barcode = null;
                 float scaleFactor = 1.0f;
-                if (bundle != null) {
-                    byte[] compressedBitmap = bundle.getByteArray(DecodeThread.BARCODE_BITMAP);
-                    if (compressedBitmap != null) {
-                        barcode = BitmapFactory.decodeByteArray(compressedBitmap, 0, compressedBitmap.length, null);
-                        // Mutable copy:
-                        barcode = barcode.copy(Bitmap.Config.ARGB_8888, true);
-                    }
+                if (bundle != null && bundle.containsKey(DecodeThread.BARCODE_BITMAP)) {
+                    // Already rendered and mutable, nothing left to do on this thread.
+                    barcode = bundle.getParcelable(DecodeThread.BARCODE_BITMAP);
                     scaleFactor = bundle.getFloat(DecodeThread.BARCODE_SCALED_FACTOR);
                 }
-                mZXingFacade.handleDecode((Result) message.obj, barcode, scaleFactor);
+                long now = System.nanoTime();
+                if (bundle != null && bundle.containsKey(DecodeThread.RESULT_FOUND_NANOS)) {
+                    mDecodeMetrics.getResultDelivery().record(now - bundle.getLong(DecodeThread.RESULT_FOUND_NANOS));
+                }
+                if (!mFirstDecodeRecorded) {
+                    mFirstDecodeRecorded = true;
+                    mDecodeMetrics.getTimeToFirstDecode().record(now - mPreviewStartNanos);
+                }
+                if (message.obj instanceof Result[]) {
+                    mZXingFacade.handleDecodeMultiple((Result[]) message.obj, barcode, scaleFactor);
+                } else {
+                    mZXingFacade.handleDecode((Result) message.obj, barcode, scaleFactor);
+                }
+                if (mContinuousScan) {
+                    requestPreviewFrames();
+                }
                 break;
             case ZXingIds.DECODE_FAILED:
-                // We're decoding as fast as possible, so when one decode fails, start another.
-                state = State.PREVIEW;
-                mZXingFacade.getCameraManager().requestPreviewFrame(decodeThread.getHandler(), ZXingIds.DECODE);
+                mFramesInFlight--;
+                if (state != State.PREVIEW) {
+                    break;
+                }
+                if (message.arg1 > 0) {
+                    // The decoder asked for a pause before the next frame, either the scene hasn't changed
+                    // or the governor is pacing decoding while nothing is found.
+                    removeMessages(ZXingIds.REQUEST_PREVIEW_FRAMES);
+                    sendEmptyMessageDelayed(ZXingIds.REQUEST_PREVIEW_FRAMES, message.arg1);
+                } else if (!hasMessages(ZXingIds.REQUEST_PREVIEW_FRAMES)) {
+                    // We're decoding as fast as possible, so when one decode fails, start another. Not while
+                    // a pause asked for by an earlier frame is still running though, the other frames in
+                    // flight fail straight away for all sorts of reasons and would cut it short.
+                    requestPreviewFrames();
+                }
+                break;
+            case ZXingIds.REQUEST_PREVIEW_FRAMES:
+                if (state == State.PREVIEW) {
+                    requestPreviewFrames();
+                }
                 break;
         }
     }
 
     public void quitSynchronously() {
         state = State.DONE;
-        mZXingFacade.getCameraManager().stopPreview();
-        Message quit = Message.obtain(decodeThread.getHandler(), ZXingIds.QUIT);
-        quit.sendToTarget();
-        try {
-            // Wait at most half a second; should be enough time, and onPause() will timeout quickly
-            decodeThread.join(500L);
-        } catch (InterruptedException e) {
-            // continue
-        }
+        mCameraManager.stopPreview();
+        mDecodeEngine.quitSynchronously();
 
         // Be absolutely sure we don't send any queued up messages
         removeMessages(ZXingIds.DECODE_SUCCEEDED);
         removeMessages(ZXingIds.DECODE_FAILED);
+        removeMessages(ZXingIds.REQUEST_PREVIEW_FRAMES);
     }
 
     private void restartPreviewAndDecode() {
         if (state == State.SUCCESS) {
             state = State.PREVIEW;
-            mZXingFacade.getCameraManager().requestPreviewFrame(decodeThread.getHandler(), ZXingIds.DECODE);
+            mPreviewStartNanos = System.nanoTime();
+            mFirstDecodeRecorded = false;
+            if (mDecodeGovernor != null) {
+                mDecodeGovernor.reset();
+            }
+            mDecodeEngine.resumeDecoding();
+            requestPreviewFrames();
+        }
+    }
+
+    /**
+     * Top up the frames requested from the camera but not yet decoded to the configured pipeline depth.
+     */
+    private void requestPreviewFrames() {
+        while (mFramesInFlight < mMaxFramesInFlight
+                && mCameraManager.requestPreviewFrame(mDecodeEngine.getHandler(), ZXingIds.DECODE)) {
+            mFramesInFlight++;
         }
     }
 
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import android.graphics.Bitmap;
+
+import com.google.zxing.Result;
+
+/**
+ * Receives every barcode found in a frame at once when
+ * {@link com.bottlerocketstudios.barcode.detection.model.ZXingConfiguration#KEY_MULTIPLE_RESULTS} is enabled.
+ */
+public interface ZXingFacadeMultipleResultListener extends ZXingFacadeListener {
+    public void handleDecodeMultiple(Result[] results, Bitmap barcode, float scaleFactor);
+}
@@ -18,7 +18,9 @@ package com.bottlerocketstudios.barcode.detection.model;
 
 import android.os.Bundle;
 
+import com.bottlerocketstudios.barcode.detection.camera.CameraApi;
 import com.bottlerocketstudios.barcode.detection.camera.FrontLightMode;
+import com.bottlerocketstudios.barcode.detection.controller.BinarizerStrategy;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.DecodeHintType;
 import com.google.zxing.ResultPointCallback;
@@ -44,11 +46,200 @@ public class ZXingConfiguration {
     public static final String KEY_DISABLE_METERING = "preferences_disable_metering";
     public static final String KEY_DISABLE_BARCODE_SCENE_MODE = "preferences_disable_barcode_scene_mode";
 
+    /**
+     * Number of preallocated preview buffers to cycle through the camera. A value of 0 uses one-shot
+     * preview callbacks which allocate a new frame for every request.
+     */
+    public static final String KEY_PREVIEW_BUFFER_COUNT = "preferences_preview_buffer_count";
+
+    /**
+     * Number of threads decoding preview frames in parallel, capped at the number of available
+     * processors. When every thread is busy only the newest frame is kept waiting.
+     */
+    public static final String KEY_DECODE_WORKER_COUNT = "preferences_decode_worker_count";
+
+    /**
+     * Number of frames kept in flight for a single decode worker. 1 waits for each decode to finish
+     * before capturing the next frame, 2 captures the next frame while the current one is decoded.
+     * When buffered capture is enabled the buffer count should exceed the total frames in flight.
+     */
+    public static final String KEY_PIPELINE_DEPTH = "preferences_pipeline_depth";
+
+    /**
+     * Render a thumbnail of the decoded area for {@link com.bottlerocketstudios.barcode.detection.controller.ZXingFacadeListener#handleDecode}.
+     * When disabled the listener receives a null bitmap.
+     */
+    public static final String KEY_RESULT_THUMBNAIL = "preferences_result_thumbnail";
+
+    /**
+     * Name of the {@link com.bottlerocketstudios.barcode.detection.camera.CameraApi} used to capture frames.
+     */
+    public static final String KEY_CAMERA_API = "preferences_camera_api";
+
+    /**
+     * Desired size of the frames analyzed by the Camera2 backend. The closest supported size with the
+     * same aspect ratio as the preview is used. 0 analyzes frames at the preview resolution.
+     */
+    public static final String KEY_ANALYSIS_WIDTH = "preferences_analysis_width";
+    public static final String KEY_ANALYSIS_HEIGHT = "preferences_analysis_height";
+
+    /**
+     * Decode only the area around the barcode found in previous frames, going back to the whole framing
+     * rectangle after this many consecutive frames without a result. 0 disables region tracking.
+     */
+    public static final String KEY_REGION_TRACKING_MISSES = "preferences_region_tracking_misses";
+
+    /**
+     * Try each frame at 1/2 or 1/4 resolution first and only fall back to full resolution if that
+     * fails. 1 always decodes at full resolution.
+     */
+    public static final String KEY_PYRAMID_DOWNSAMPLE = "preferences_pyramid_downsample";
+
+    /**
+     * Try the readers for the formats decoded most often recently first, and skip those that are rarely
+     * seen on most frames.
+     */
+    public static final String KEY_ADAPTIVE_READER_ORDER = "preferences_adaptive_reader_order";
+
+    /**
+     * Frames with a sharpness score below this, from 0 to 255, are skipped without being decoded.
+     * Around 24 drops most frames smeared by hand movement. 0 disables the check.
+     */
+    public static final String KEY_MIN_FRAME_SHARPNESS = "preferences_min_frame_sharpness";
+
+    /**
+     * Frames with a contrast score below this, from 0 to 255, are skipped without being decoded.
+     * Around 40 drops frames of blank surfaces and lens caps. 0 disables the check.
+     */
+    public static final String KEY_MIN_FRAME_CONTRAST = "preferences_min_frame_contrast";
+
+    /**
+     * Frames that differ from the last frame which failed to decode by no more than this many luminance
+     * levels on average are skipped, and frames are requested less often until the scene changes.
+     * Around 4 tolerates sensor noise. 0 decodes every frame.
+     */
+    public static final String KEY_DUPLICATE_FRAME_THRESHOLD = "preferences_duplicate_frame_threshold";
+
+    /**
+     * Keep decoding after a barcode is found instead of waiting for
+     * {@link com.bottlerocketstudios.barcode.detection.controller.ZXingFacade#restartPreviewAfterDelay(long)}.
+     */
+    public static final String KEY_CONTINUOUS_SCAN = "preferences_continuous_scan";
+
+    /**
+     * While scanning continuously, a barcode with the same text and format as one seen less than this
+     * many milliseconds ago is not reported again. 0 reports every decode.
+     */
+    public static final String KEY_CONTINUOUS_SCAN_REPEAT_WINDOW_MS = "preferences_continuous_scan_repeat_window_ms";
+
+    /**
+     * Look for every barcode in a frame and report them together, see
+     * {@link com.bottlerocketstudios.barcode.detection.controller.ZXingFacadeMultipleResultListener}.
+     * Region tracking and pyramid decoding do not apply, the whole framing rectangle is searched at
+     * full resolution.
+     */
+    public static final String KEY_MULTIPLE_RESULTS = "preferences_multiple_results";
+
+    /**
+     * Most barcodes reported from a single frame when decoding multiple results.
+     */
+    public static final String KEY_MAX_RESULTS_PER_FRAME = "preferences_max_results_per_frame";
+
+    /**
+     * Milliseconds after which no further barcodes are looked for in a frame when decoding multiple
+     * results. The decode in progress is allowed to finish.
+     */
+    public static final String KEY_MULTIPLE_RESULTS_TIME_BUDGET_MS = "preferences_multiple_results_time_budget_ms";
+
+    /**
+     * Path of a file to append every preview frame delivered by the camera to, for replaying later
+     * with {@link #KEY_FRAME_REPLAY_PATH}. Only the Camera1 backend records. Unset by default.
+     */
+    public static final String KEY_FRAME_RECORDING_PATH = "preferences_frame_recording_path";
+
+    /**
+     * Path of a frame recording to decode instead of opening a camera. Unset by default.
+     */
+    public static final String KEY_FRAME_REPLAY_PATH = "preferences_frame_replay_path";
+
+    /**
+     * True to replay a recording at the pace it was recorded, false to deliver every frame as soon
+     * as it is requested.
+     */
+    public static final String KEY_FRAME_REPLAY_REALTIME = "preferences_frame_replay_realtime";
+
+    /**
+     * Images decoded by a BatchDecoder with more pixels than this are subsampled by a power of two
+     * until they fit.
+     */
+    public static final String KEY_BATCH_MAX_IMAGE_PIXELS = "preferences_batch_max_image_pixels";
+
+    /**
+     * Most barcodes a BatchDecoder reports from one image.
+     */
+    public static final String KEY_BATCH_MAX_RESULTS = "preferences_batch_max_results";
+
+    /**
+     * Milliseconds after which a BatchDecoder stops looking for further barcodes in an image.
+     */
+    public static final String KEY_BATCH_TIME_BUDGET_MS = "preferences_batch_time_budget_ms";
+
+    /**
+     * Degrees clockwise, 0, 90, 180 or 270, that Camera1 frames are turned to match the screen, or -1 to
+     * work it out from the camera's sensor orientation and the display rotation. Frames are read
+     * rotated in place rather than copied.
+     */
+    public static final String KEY_FRAME_ROTATION = "preferences_frame_rotation";
+
+    /**
+     * Consecutive frames without a barcode before switching between decoding frames as captured and
+     * inverted, to find light on dark barcodes on devices without a negative color effect for
+     * {@link #KEY_INVERT_SCAN}. 1 alternates every frame while nothing is found, 0 never inverts.
+     */
+    public static final String KEY_SOFTWARE_INVERT_MISSES = "preferences_software_invert_misses";
+
+    /**
+     * Every this many frames is decoded with {@link com.google.zxing.DecodeHintType#TRY_HARDER} set and
+     * {@link com.google.zxing.DecodeHintType#PURE_BARCODE} cleared by a second set of readers, the rest
+     * with the cheaper hints as configured. 0 never tries harder on a schedule. Has no effect if the
+     * base hints already try harder.
+     */
+    public static final String KEY_TRY_HARDER_INTERVAL = "preferences_try_harder_interval";
+
+    /**
+     * Consecutive frames without a barcode before the next frame tries harder as for
+     * {@link #KEY_TRY_HARDER_INTERVAL}. 0 never tries harder after misses.
+     */
+    public static final String KEY_TRY_HARDER_MISSES = "preferences_try_harder_misses";
+
+    /**
+     * Milliseconds a frame may spend being decoded before it is abandoned as a failure and the next
+     * frame requested, so one pathological frame can't stall scanning. The readers are stopped the next
+     * time they binarize, report a point or move on to the next format. 0 lets every decode finish.
+     */
+    public static final String KEY_FRAME_TIME_BUDGET_MS = "preferences_frame_time_budget_ms";
+
+    /**
+     * Share of the time, in percent, the decode workers are kept busy while nothing is being found, to
+     * keep a scanner left running from heating the device until it throttles. After each failed frame
+     * the next is requested only after a pause scaled to how long frames take to decode. Decoding
+     * returns to full speed as soon as a barcode or part of one is seen. 100 decodes flat out.
+     */
+    public static final String KEY_DECODE_DUTY_CYCLE_PERCENT = "preferences_decode_duty_cycle_percent";
+
+    /**
+     * With Camera1 in the auto or macro focus mode, hold back frames captured while a focus sweep is in
+     * progress instead of decoding them, and decode the first frame after a successful sweep ahead of
+     * any frames already waiting.
+     */
+    public static final String KEY_SKIP_FRAMES_WHILE_FOCUSING = "preferences_skip_frames_while_focusing";
+
     private Bundle mZxingConfiguration;
     private Collection<BarcodeFormat> mDecodeFormats;
     private Map<DecodeHintType, ?> mBaseHints;
     private ResultPointCallback mResultPointCallback;
     private String mCharacterSet;
+    private BinarizerStrategy mBinarizerStrategy;
 
     public ZXingConfiguration() {
         this(null);
@@ -78,6 +269,14 @@ public class ZXingConfiguration {
         return mZxingConfiguration.getString(key, defaultValue);
     }
 
+    public void setInt(String key, int value) {
+        mZxingConfiguration.putInt(key, value);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        return mZxingConfiguration.getInt(key, defaultValue);
+    }
+
     public Collection<BarcodeFormat> getDecodeFormats() {
         return mDecodeFormats;
     }
@@ -110,6 +309,17 @@ public class ZXingConfiguration {
         mCharacterSet = characterSet;
     }
 
+    public BinarizerStrategy getBinarizerStrategy() {
+        return mBinarizerStrategy;
+    }
+
+    /**
+     * @param binarizerStrategy Chooses the binarizer for each frame, null always uses a HybridBinarizer.
+     */
+    public void setBinarizerStrategy(BinarizerStrategy binarizerStrategy) {
+        mBinarizerStrategy = binarizerStrategy;
+    }
+
     public static ZXingConfiguration createDefaultConfiguration(boolean includeStandard1D, boolean includeStandard2D) {
         ZXingConfiguration zXingConfiguration = new ZXingConfiguration();
         zXingConfiguration.setBoolean(KEY_DECODE_1D_PRODUCT, includeStandard1D);
@@ -128,6 +338,37 @@ public class ZXingConfiguration {
         zXingConfiguration.setBoolean(KEY_DISABLE_METERING, true);
         zXingConfiguration.setBoolean(KEY_DISABLE_BARCODE_SCENE_MODE, true);
 
+        zXingConfiguration.setInt(KEY_PREVIEW_BUFFER_COUNT, 0);
+        zXingConfiguration.setInt(KEY_DECODE_WORKER_COUNT, 1);
+        zXingConfiguration.setInt(KEY_PIPELINE_DEPTH, 1);
+        zXingConfiguration.setBoolean(KEY_RESULT_THUMBNAIL, false);
+
+        zXingConfiguration.setString(KEY_CAMERA_API, CameraApi.CAMERA1.toString());
+        zXingConfiguration.setInt(KEY_ANALYSIS_WIDTH, 0);
+        zXingConfiguration.setInt(KEY_ANALYSIS_HEIGHT, 0);
+        zXingConfiguration.setInt(KEY_REGION_TRACKING_MISSES, 0);
+        zXingConfiguration.setInt(KEY_PYRAMID_DOWNSAMPLE, 1);
+        zXingConfiguration.setBoolean(KEY_ADAPTIVE_READER_ORDER, false);
+        zXingConfiguration.setInt(KEY_MIN_FRAME_SHARPNESS, 0);
+        zXingConfiguration.setInt(KEY_MIN_FRAME_CONTRAST, 0);
+        zXingConfiguration.setInt(KEY_DUPLICATE_FRAME_THRESHOLD, 0);
+        zXingConfiguration.setBoolean(KEY_CONTINUOUS_SCAN, false);
+        zXingConfiguration.setInt(KEY_CONTINUOUS_SCAN_REPEAT_WINDOW_MS, 2000);
+        zXingConfiguration.setBoolean(KEY_MULTIPLE_RESULTS, false);
+        zXingConfiguration.setInt(KEY_MAX_RESULTS_PER_FRAME, 6);
+        zXingConfiguration.setInt(KEY_MULTIPLE_RESULTS_TIME_BUDGET_MS, 250);
+        zXingConfiguration.setBoolean(KEY_FRAME_REPLAY_REALTIME, true);
+        zXingConfiguration.setInt(KEY_BATCH_MAX_IMAGE_PIXELS, 4000000);
+        zXingConfiguration.setInt(KEY_BATCH_MAX_RESULTS, 20);
+        zXingConfiguration.setInt(KEY_BATCH_TIME_BUDGET_MS, 2000);
+        zXingConfiguration.setInt(KEY_FRAME_ROTATION, -1);
+        zXingConfiguration.setInt(KEY_SOFTWARE_INVERT_MISSES, 0);
+        zXingConfiguration.setInt(KEY_TRY_HARDER_INTERVAL, 0);
+        zXingConfiguration.setInt(KEY_TRY_HARDER_MISSES, 0);
+        zXingConfiguration.setInt(KEY_FRAME_TIME_BUDGET_MS, 0);
+        zXingConfiguration.setInt(KEY_DECODE_DUTY_CYCLE_PERCENT, 100);
+        zXingConfiguration.setBoolean(KEY_SKIP_FRAMES_WHILE_FOCUSING, false);
+
         return zXingConfiguration;
     }
 }
@@ -22,4 +22,6 @@ public class ZXingIds {
     public static final int DECODE_SUCCEEDED = 70003;
     public static final int DECODE_FAILED = 70004;
     public static final int RESTART_PREVIEW = 70005;
+    public static final int REQUEST_PREVIEW_FRAMES = 70006;
+    public static final int RESUME_DECODING = 70007;
 }
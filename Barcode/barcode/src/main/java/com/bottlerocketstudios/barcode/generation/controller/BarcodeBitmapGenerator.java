@@ -20,47 +20,22 @@ import android.graphics.Bitmap;
 import android.util.Log;
 
 import com.bottlerocketstudios.barcode.generation.model.BarcodeRequest;
-import com.google.zxing.EncodeHintType;
-import com.google.zxing.MultiFormatWriter;
 import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
 
-import java.util.EnumMap;
-import java.util.Map;
-
 public class BarcodeBitmapGenerator {
     private static final String TAG = BarcodeBitmapGenerator.class.getSimpleName();
 
+    private final BarcodeMatrixGenerator mBarcodeMatrixGenerator = new BarcodeMatrixGenerator();
+
     public Bitmap generate(BarcodeRequest barcodeRequest) {
-        MultiFormatWriter multiFormatWriter = new MultiFormatWriter();
-        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
-        hints.put(EncodeHintType.CHARACTER_SET, barcodeRequest.getCharacterSet());
         try {
-            BitMatrix bitMatrix = multiFormatWriter.encode(
-                    barcodeRequest.getBarcodeText(),
-                    barcodeRequest.getBarcodeFormat(),
-                    barcodeRequest.getWidth(),
-                    barcodeRequest.getHeight(),
-                    hints);
-            return convertBitMatrixToBitmap(bitMatrix, barcodeRequest.getForegroundColor(), barcodeRequest.getBackgroundColor());
+            BitMatrix bitMatrix = mBarcodeMatrixGenerator.generate(barcodeRequest);
+            int[] pixels = mBarcodeMatrixGenerator.render(bitMatrix, barcodeRequest);
+            return Bitmap.createBitmap(pixels, bitMatrix.getWidth(), bitMatrix.getHeight(), Bitmap.Config.ARGB_8888);
         } catch (WriterException e) {
             Log.e(TAG, "Caught com.google.zxing.WriterException", e);
         }
         return null;
     }
-
-    private Bitmap convertBitMatrixToBitmap(BitMatrix bitMatrix, int foregroundColor, int backgroundColor) {
-        int width = bitMatrix.getWidth();
-        int height = bitMatrix.getHeight();
-
-        int pixels[] = new int[width * height];
-        for (int y = 0; y < height; y++) {
-            int offset = y * width;
-            for (int x = 0; x < width; x++) {
-                pixels[offset + x] =  bitMatrix.get(x, y) ? foregroundColor : backgroundColor;
-            }
-        }
-
-        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
-    }
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.bottlerocketstudios.barcode.detection.model.DecodeFormatManager;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Binarizer;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes one preview frame per operation with the same {@link FrameDecoder} the decode threads run,
+ * in its default configuration, given a {@link PlanarYUVLuminanceSource} over the framing rectangle
+ * and a binarizer from the {@link BinarizerStrategy}. Frames are replayed in
+ * order from a {@link FrameCorpus}, so throughput is an average over frames that decode and frames that
+ * don't, as it is while scanning. Faster is only better if it still finds the barcodes, so the rate of
+ * frames that decoded is reported next to it as the decodedFrames counter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+    /**
+     * {@link FrameCorpus#SYNTHETIC} or a directory of recorded frames.
+     */
+    @Param({FrameCorpus.SYNTHETIC})
+    public String corpus;
+
+    /**
+     * DEFAULT is the format set of the default configuration, ALL adds Aztec and PDF417.
+     */
+    @Param({"DEFAULT", "PRODUCT", "QR_CODE", "ALL"})
+    public String formats;
+
+    /**
+     * Edge of the centered framing rectangle as a fraction of the frame, 0.625 is the 5/8 the camera
+     * backends use by default.
+     */
+    @Param({"1.0", "0.625"})
+    public double crop;
+
+    @Param({"HYBRID", "GLOBAL", "ADAPTIVE"})
+    public String binarizer;
+
+    @Param({"false", "true"})
+    public boolean tryHarder;
+
+    private List<FrameCorpus.Frame> mFrames;
+    private FrameDecoder mFrameDecoder;
+    private int mNextFrame;
+
+    @Setup
+    public void setUp() throws IOException {
+        mFrames = FrameCorpus.load(corpus);
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, createFormats(formats));
+        if (tryHarder) {
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        }
+        mFrameDecoder = new FrameDecoder.FrameDecoderBuilder()
+                .hints(hints)
+                .binarizerStrategy(createBinarizerStrategy(binarizer))
+                .build();
+    }
+
+    @Benchmark
+    public Result[] decode(DecodeCounters counters) {
+        FrameCorpus.Frame frame = mFrames.get(mNextFrame);
+        mNextFrame = (mNextFrame + 1) % mFrames.size();
+        int width = (int) (frame.width * crop);
+        int height = (int) (frame.height * crop);
+        LuminanceSource source = new PlanarYUVLuminanceSource(frame.data, frame.width, frame.height,
+                (frame.width - width) / 2, (frame.height - height) / 2, width, height, false);
+        Result[] results = mFrameDecoder.decode(source);
+        if (results != null) {
+            counters.decodedFrames++;
+        }
+        return results;
+    }
+
+    /**
+     * Reported by JMH alongside the throughput of each iteration.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class DecodeCounters {
+
+        public long decodedFrames;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            decodedFrames = 0;
+        }
+    }
+
+    private static Collection<BarcodeFormat> createFormats(String formats) {
+        Collection<BarcodeFormat> decodeFormats = EnumSet.noneOf(BarcodeFormat.class);
+        if ("PRODUCT".equals(formats)) {
+            decodeFormats.addAll(DecodeFormatManager.PRODUCT_FORMATS);
+        } else if ("QR_CODE".equals(formats)) {
+            decodeFormats.addAll(DecodeFormatManager.QR_CODE_FORMATS);
+        } else {
+            decodeFormats.addAll(DecodeFormatManager.PRODUCT_FORMATS);
+            decodeFormats.addAll(DecodeFormatManager.INDUSTRIAL_FORMATS);
+            decodeFormats.addAll(DecodeFormatManager.QR_CODE_FORMATS);
+            decodeFormats.addAll(DecodeFormatManager.DATA_MATRIX_FORMATS);
+            if ("ALL".equals(formats)) {
+                decodeFormats.addAll(DecodeFormatManager.AZTEC_FORMATS);
+                decodeFormats.addAll(DecodeFormatManager.PDF417_FORMATS);
+            }
+        }
+        return decodeFormats;
+    }
+
+    private static BinarizerStrategy createBinarizerStrategy(String binarizer) {
+        if ("GLOBAL".equals(binarizer)) {
+            return new BinarizerStrategy() {
+                @Override
+                public Binarizer createBinarizer(LuminanceSource source) {
+                    return new GlobalHistogramBinarizer(source);
+                }
+
+                @Override
+                public void onDecodeAttempted(Binarizer binarizer, boolean decoded) {
+                }
+            };
+        }
+        if ("ADAPTIVE".equals(binarizer)) {
+            return new AdaptiveBinarizerStrategy();
+        }
+        return new HybridBinarizerStrategy();
+    }
+
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2016 Bottle Rocket LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bottlerocketstudios.barcode.detection.controller;
+
+import com.bottlerocketstudios.barcode.detection.camera.FrameRecording;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * NV21 preview frames to replay through the decoder. Frames are either read from a
+ * {@link FrameRecording}, from a directory of recordings and of single frames named like
+ * <code>anything-1280x720.nv21</code> holding the raw frame as the camera delivered it, or rendered
+ * synthetically to look roughly like a camera preview: uneven lighting,
+ * sensor noise and a little blur, with some frames showing no barcode at all.
+ */
+final class FrameCorpus {
+
+    static final String SYNTHETIC = "synthetic";
+
+    private static final String RECORDING_SUFFIX = ".frames";
+    private static final Pattern FRAME_SIZE_PATTERN = Pattern.compile("(\\d+)x(\\d+)\\.nv21$");
+
+    private static final int SYNTHETIC_WIDTH = 1280;
+    private static final int SYNTHETIC_HEIGHT = 720;
+    private static final int EMPTY_FRAMES = 2;
+
+    private FrameCorpus() {
+    }
+
+    static final class Frame {
+        final String name;
+        final byte[] data;
+        final int width;
+        final int height;
+
+        Frame(String name, byte[] data, int width, int height) {
+            this.name = name;
+            this.data = data;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * @param corpus {@link #SYNTHETIC}, the path of a frame recording or of a directory holding
+     *               .frames recordings and .nv21 frames.
+     */
+    static List<Frame> load(String corpus) throws IOException {
+        if (SYNTHETIC.equals(corpus)) {
+            return render();
+        }
+        List<Frame> frames = new ArrayList<Frame>();
+        File path = new File(corpus);
+        if (path.isFile()) {
+            readRecording(path, frames);
+        } else {
+            File[] files = path.listFiles();
+            if (files == null) {
+                throw new IOException("No such file or directory " + path);
+            }
+            Arrays.sort(files);
+            for (File file : files) {
+                Matcher matcher = FRAME_SIZE_PATTERN.matcher(file.getName());
+                if (matcher.find()) {
+                    frames.add(read(file, Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+                } else if (file.getName().endsWith(RECORDING_SUFFIX)) {
+                    readRecording(file, frames);
+                }
+            }
+        }
+        if (frames.isEmpty()) {
+            throw new IOException("No frames in " + path);
+        }
+        return frames;
+    }
+
+    private static void readRecording(File file, List<Frame> frames) throws IOException {
+        FrameRecording recording = new FrameRecording(file);
+        try {
+            for (int i = 0; i < recording.getFrameCount(); i++) {
+                frames.add(new Frame(file.getName() + '#' + i, recording.readFrame(i),
+                        recording.getWidth(i), recording.getHeight(i)));
+            }
+        } finally {
+            recording.close();
+        }
+    }
+
+    private static Frame read(File file, int width, int height) throws IOException {
+        byte[] data = new byte[width * height * 3 / 2];
+        if (file.length() < data.length) {
+            throw new IOException(file + " is too short for a " + width + "x" + height + " NV21 frame");
+        }
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        return new Frame(file.getName(), data, width, height);
+    }
+
+    private static List<Frame> render() throws IOException {
+        List<Frame> frames = new ArrayList<Frame>();
+        Random random = new Random(42);
+        try {
+            frames.add(render(BarcodeFormat.EAN_13, "5901234123457", 480, 160, random));
+            frames.add(render(BarcodeFormat.UPC_A, "036000291452", 480, 160, random));
+            frames.add(render(BarcodeFormat.CODE_128, "BOTTLEROCKET-0042", 560, 160, random));
+            frames.add(render(BarcodeFormat.CODE_39, "BRS 1234", 480, 160, random));
+            frames.add(render(BarcodeFormat.QR_CODE, "https://github.com/BottleRocketStudios/Android-Barcode", 280, 280, random));
+            frames.add(render(BarcodeFormat.DATA_MATRIX, "Bottle Rocket Studios", 200, 200, random));
+            for (int i = 0; i < EMPTY_FRAMES; i++) {
+                frames.add(render(null, null, 0, 0, random));
+            }
+        } catch (WriterException e) {
+            throw new IOException(e);
+        }
+        return frames;
+    }
+
+    /**
+     * Draw the barcode in the middle of a frame, or an empty scene if format is null.
+     */
+    private static Frame render(BarcodeFormat format, String contents, int width, int height, Random random)
+            throws WriterException {
+        BitMatrix matrix = null;
+        int scale = 1;
+        if (format != null) {
+            Map<EncodeHintType, Object> hints = new EnumMap<EncodeHintType, Object>(EncodeHintType.class);
+            hints.put(EncodeHintType.MARGIN, 4);
+            matrix = new MultiFormatWriter().encode(contents, format, width, height, hints);
+            // Some writers ignore the requested size and draw one pixel per module.
+            scale = Math.max(1, Math.min(width / matrix.getWidth(), height / matrix.getHeight()));
+        }
+
+        int frameWidth = SYNTHETIC_WIDTH;
+        int frameHeight = SYNTHETIC_HEIGHT;
+        int[] luminance = new int[frameWidth * frameHeight];
+        int left = matrix == null ? 0 : (frameWidth - matrix.getWidth() * scale) / 2;
+        int top = matrix == null ? 0 : (frameHeight - matrix.getHeight() * scale) / 2;
+        for (int y = 0; y < frameHeight; y++) {
+            for (int x = 0; x < frameWidth; x++) {
+                // Light falls off towards the bottom right corner.
+                int white = 230 - 70 * (x + y) / (frameWidth + frameHeight);
+                int value = white;
+                if (matrix != null) {
+                    int mx = (x - left) / scale;
+                    int my = (y - top) / scale;
+                    if (x >= left && y >= top && my >= 0 && mx < matrix.getWidth() && my < matrix.getHeight() && matrix.get(mx, my)) {
+                        value = 40;
+                    }
+                }
+                luminance[y * frameWidth + x] = value + (int) (random.nextGaussian() * 6);
+            }
+        }
+
+        byte[] data = new byte[frameWidth * frameHeight * 3 / 2];
+        for (int y = 0; y < frameHeight; y++) {
+            for (int x = 0; x < frameWidth; x++) {
+                // 3x3 box blur for the softness of a real lens.
+                int sum = 0;
+                int count = 0;
+                for (int dy = -1; dy <= 1; dy++) {
+                    int sy = y + dy;
+                    if (sy < 0 || sy >= frameHeight) {
+                        continue;
+                    }
+                    for (int dx = -1; dx <= 1; dx++) {
+                        int sx = x + dx;
+                        if (sx >= 0 && sx < frameWidth) {
+                            sum += luminance[sy * frameWidth + sx];
+                            count++;
+                        }
+                    }
+                }
+                data[y * frameWidth + x] = (byte) Math.max(0, Math.min(255, sum / count));
+            }
+        }
+        // Neutral chroma, the decoder only looks at the Y plane.
+        Arrays.fill(data, frameWidth * frameHeight, data.length, (byte) 128);
+        String name = format == null ? "empty" : format.name();
+        return new Frame(name, data, frameWidth, frameHeight);
+    }
+
+}